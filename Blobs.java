@@ -1,9 +1,19 @@
 package gitlet;
 import java.io.Serializable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
 /** Blobs class for Gitlet, a class that creates the
  * x    Blob object, which has the name,
- *  content, and hash ID associated with the file.
+ *  file, and hash ID associated with the file.
+ *  The content is never held in memory: the hash is computed by
+ *  streaming the file through SHA-1 in fixed-size chunks.
  *  @author Minh Nguyen
  */
 
@@ -14,10 +24,21 @@ public class Blobs implements Serializable {
      * @param cwd The current wording directory.
      * */
     public Blobs(String fileName, String cwd) {
-        File blobFile = new File(cwd, fileName);
+        file = new File(cwd, fileName);
         name = fileName;
-        content = Utils.readContentsAsString(blobFile);
-        hash = Utils.sha1(fileName + content);
+        hash = hashOf(fileName, file);
+    }
+
+    /** Create the Blobs object, taking the hash from the stat cache so
+     * that an unchanged file is not read again.
+     * @param fileName The name of the Blob file.
+     * @param cwd The current wording directory.
+     * @param cache The stat cache of the working directory.
+     * */
+    public Blobs(String fileName, String cwd, StatCache cache) {
+        file = new File(cwd, fileName);
+        name = fileName;
+        hash = cache.hash(fileName, file);
     }
 
     /** The function that returns the name of the Blob. */
@@ -25,9 +46,9 @@ public class Blobs implements Serializable {
         return name;
     }
 
-    /** The function that returns the content of the Blob. */
-    public String getContent() {
-        return content;
+    /** The function that returns the file of the Blob. */
+    public File getFile() {
+        return file;
     }
 
     /** The function that returns the hashId of the Blob. */
@@ -35,13 +56,82 @@ public class Blobs implements Serializable {
         return hash;
     }
 
+    /** Whether the content of the Blob contains the given text,
+     * scanning the file in chunks.
+     * @param text the text to look for.
+     * @return true if the text occurs in the file. */
+    public boolean contains(String text) {
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        byte[] window = new byte[CHUNK + pattern.length];
+        int carried = 0;
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.wrap(window);
+            buf.position(carried);
+            while (in.read(buf) >= 0) {
+                int filled = buf.position();
+                for (int i = 0; i + pattern.length <= filled; i += 1) {
+                    int j = 0;
+                    while (j < pattern.length && window[i + j] == pattern[j]) {
+                        j += 1;
+                    }
+                    if (j == pattern.length) {
+                        return true;
+                    }
+                }
+                carried = Math.min(filled, pattern.length - 1);
+                System.arraycopy(window, filled - carried, window, 0, carried);
+                buf.clear();
+                buf.position(carried);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return false;
+    }
+
+    /** Compute the hashId of a file, which is the SHA-1 hash of its name
+     * followed by its content, reading the content in chunks.
+     * @param fileName the name of the file.
+     * @param source the file.
+     * @return the hashId. */
+    public static String hashOf(String fileName, File source) {
+        Trace.count(Trace.Counter.HASHES);
+        Trace.Phase phase = Trace.phase("hash");
+        try (phase;
+             FileChannel in = FileChannel.open(source.toPath(),
+                StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(fileName.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+            while (in.read(buf) >= 0) {
+                Trace.add(Trace.Counter.BYTES_HASHED, buf.position());
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** The size of the chunks files are read in. */
+    static final int CHUNK = 1 << 16;
+
     /** The name of the Blob. */
     private String name;
 
-    /** The content of the Blob. */
-    private String content;
+    /** The file of the Blob. */
+    private File file;
 
     /** The hashId of the Blob. */
     private String hash;
 
-}
\ No newline at end of file
+}
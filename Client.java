@@ -0,0 +1,136 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** Client class for Gitlet, a class that hands a command to the daemon
+ *  serving the repository, if there is one, and copies back what it
+ *  prints.
+ *  The daemon listens on .gitlet/daemon.sock.  The client sends the
+ *  working directory, whether to trace and the arguments; the daemon
+ *  answers with frames, each a channel byte and a length, followed for
+ *  OUT and ERR by that many bytes of standard output or error, until an
+ *  EXIT frame whose length is the exit status.  Setting GITLET_DAEMON=0
+ *  runs every command in its own process even when a daemon is up.
+ *  @author Minh Nguyen
+ */
+public class Client {
+
+    /** Run a command through the daemon of the current directory.
+     * @param args the command and its operands.
+     * @param trace whether to print a trace of the command.
+     * @return the exit status of the command, or -1 if no daemon is
+     * serving the directory, so the caller must run the command. */
+    public static int forward(String[] args, boolean trace) {
+        if ("0".equals(System.getenv("GITLET_DAEMON"))) {
+            return -1;
+        }
+        return send(args, trace);
+    }
+
+    /** Run a command through the daemon of the current directory, even
+     * when GITLET_DAEMON is 0.
+     * @param args the command and its operands.
+     * @param trace whether to print a trace of the command.
+     * @return the exit status of the command, or -1 if no daemon is
+     * serving the directory. */
+    static int send(String[] args, boolean trace) {
+        String cwd = System.getProperty("user.dir");
+        SocketChannel channel = connect(Utils.join(cwd, ".gitlet", SOCKET));
+        if (channel == null) {
+            return -1;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream
+                    (Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(cwd);
+            out.writeBoolean(trace);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream
+                    (Channels.newInputStream(channel), BUFFER));
+            PrintStream stdout = System.out;
+            PrintStream stderr = System.err;
+            byte[] buf = new byte[BUFFER];
+            while (true) {
+                byte kind = in.readByte();
+                int length = in.readInt();
+                if (kind == EXIT) {
+                    stdout.flush();
+                    stderr.flush();
+                    return length;
+                }
+                OutputStream dest = kind == ERR ? stderr : stdout;
+                while (length > 0) {
+                    int n = in.read(buf, 0, Math.min(length, buf.length));
+                    if (n < 0) {
+                        throw new IOException("Daemon closed the socket.");
+                    }
+                    dest.write(buf, 0, n);
+                    length -= n;
+                }
+            }
+        } catch (IOException excp) {
+            System.err.println("Lost the daemon: " + excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Connect to a daemon.
+     * @param socket the socket it listens on.
+     * @return the connection, or null if no daemon listens there. */
+    static SocketChannel connect(File socket) {
+        if (!socket.exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel =
+                    SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Name of the socket in .gitlet. */
+    static final String SOCKET = "daemon.sock";
+
+    /** Magic number at the start of a request: "GDMN". */
+    static final int MAGIC = 0x47444d4e;
+
+    /** Version of the protocol. */
+    static final int VERSION = 1;
+
+    /** Frame of standard output. */
+    static final byte OUT = 1;
+
+    /** Frame of standard error. */
+    static final byte ERR = 2;
+
+    /** Frame ending the command, its length being the exit status. */
+    static final byte EXIT = 0;
+
+    /** Size of the copy buffer, and of the daemon's output frames. */
+    static final int BUFFER = 1 << 16;
+
+}
@@ -1,12 +1,26 @@
 package gitlet;
-import java.io.Serializable;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 
 /**
@@ -16,28 +30,105 @@ import java.util.TreeMap;
  * @author Minh Nguyen
  */
 
-public class Commands implements Serializable {
+public class Commands {
 
     /**
      * Constructor that initializes the working directory.
      */
     public Commands() {
+        this(null);
+    }
+
+    /**
+     * Constructor that initializes the working directory, reusing the
+     * object store, stat cache, commit cache, commit graph and indexes of
+     * an earlier Commands on the same repository, as the daemon does.
+     * The branches and the stage are always read again.
+     *
+     * @param warm the earlier Commands, or null to load everything
+     */
+    public Commands(Commands warm) {
         cwd = System.getProperty("user.dir");
-        File lastSave = Utils.join(cwd, ".gitlet/saves");
-        if (lastSave.exists()) {
-            Commands prev = Utils.readObject(lastSave, Commands.class);
-            branches = prev.branches;
-            headBranch = prev.headBranch;
-            headCommit = prev.headCommit;
-            stage = prev.stage;
-            commitList = prev.commitList;
-            intersection = prev.intersection;
+        File gitlet = Utils.join(cwd, ".gitlet");
+        if (warm == null) {
+            config = new Config(gitlet);
+            objects = new ObjectStore(gitlet, config);
+            statCache = new StatCache(gitlet);
+        } else {
+            config = warm.config;
+            objects = warm.objects;
+            statCache = warm.statCache;
+            commits = warm.commits;
+            graph = warm.graph;
+            index = warm.index;
+            messages = warm.messages;
+        }
+        workTree = new WorkTree(cwd, statCache, config, this::trackedFiles);
+        headFile = new StateFile(gitlet, "HEAD");
+        refsFile = new StateFile(gitlet, "refs");
+        stageFile = new StateFile(gitlet, "staging");
+        Trace.Phase phase = Trace.phase("load state");
+        try (phase) {
+            headFile.read(in -> headBranch = in.readUTF());
+            refsFile.read(in -> branches = StateFile.readMap(in));
+            stageFile.read(in -> stage.read(in));
+        }
+        if (!headFile.exists() && Utils.join(gitlet, "saves").isFile()) {
+            convertSaves(gitlet);
+        }
+        if (branches != null) {
+            headCommit = branches.get(headBranch);
         }
     }
 
+    /**
+     * Writes back the parts of the repository state that changed.
+     */
     public void save() {
-        File newSave = Utils.join(cwd, ".gitlet", "saves");
-        Utils.writeObject(newSave, this);
+        Trace.Phase phase = Trace.phase("save state");
+        try (phase) {
+            headFile.write(out -> out.writeUTF(headBranch));
+            refsFile.write(out -> StateFile.writeMap(out, branches));
+            stageFile.write(out -> stage.write(out));
+            statCache.save();
+        }
+    }
+
+    /**
+     * Converts the .gitlet/saves of an older repository into the HEAD,
+     * refs and staging files and the commit graph, then deletes it, so
+     * this only happens the first time the repository is opened. The
+     * commits and blobs stay where they are, directly under .gitlet.
+     * A graph or index left by an interrupted conversion is rebuilt.
+     *
+     * @param gitlet the .gitlet directory
+     */
+    private void convertSaves(File gitlet) {
+        File saves = Utils.join(gitlet, "saves");
+        LegacySave legacy = LegacySave.read(saves);
+        if (legacy.getBranches() == null || legacy.getHeadBranch() == null
+                || legacy.getCommitList() == null) {
+            throw Utils.error("Unsupported repository format: "
+                    + "cannot read .gitlet/saves.");
+        }
+        branches = legacy.getBranches();
+        headBranch = legacy.getHeadBranch();
+        if (legacy.getStage() != null) {
+            stage = legacy.getStage();
+        }
+        for (String derived : new String[] {"commit-graph", "commit-index",
+                "messages", "message-index"}) {
+            Utils.join(gitlet, derived).delete();
+        }
+        graph = null;
+        index = null;
+        messages = null;
+        CommitGraph commitGraph = getGraph();
+        for (String commitId : legacy.getCommitList()) {
+            commitGraph.add(getCommit(commitId));
+        }
+        save();
+        saves.delete();
     }
 
     /**
@@ -50,21 +141,18 @@ public class Commands implements Serializable {
 
         File gitletDirectory = Utils.join(cwd, ".gitlet");
         if (gitletDirectory.exists()) {
-            System.out.println("Gitlet version-control system "
+            throw Utils.error("Gitlet version-control system "
                     + "already exists in the current directory.");
-            System.exit(0);
         } else {
             gitletDirectory.mkdir();
         }
 
 
-        HashMap<String, String> emptyBlob = new HashMap<>();
-        Commits initialCommit = new Commits("initial commit", null, emptyBlob);
+        Commits initialCommit = new Commits("initial commit", null,
+                Tree.write(objects, new HashMap<>()));
 
 
-        File initial = Utils.join(cwd, ".gitlet/" + initialCommit.getHashId());
-        Utils.writeObject(initial, initialCommit);
-        commitList.add(initialCommit.getHashId());
+        recordCommit(initialCommit);
 
 
         branches = new TreeMap<String, String>();
@@ -77,55 +165,40 @@ public class Commands implements Serializable {
     }
 
     /**
-     * The command add().
-     * Adds a copy of the file as it currently exists to the staging area.
+     * The command add [path]....
+     * Adds a copy of each file as it currently exists to the staging area.
+     * A path may also be a directory, which adds every file below it that
+     * is not ignored, or a glob. The files are hashed and stored on up to
+     * core.parallelism threads, and the stage is saved once.
      *
-     * @param fileName The name of the file being added.
+     * @param args the arguments of add, the paths from args[1]
      */
-    public void add(String fileName) {
-        File addFile = new File(fileName);
-
-
-        if (addFile.exists()) {
-
-
-            Blobs file = new Blobs(fileName, cwd);
-            String fileHash = file.getHash();
-
-            File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-            Commits parentCommit = Utils.readObject
-                    (pathToParentCommit, Commits.class);
-
-            if (!parentCommit.getBlob().isEmpty()
-                    && parentCommit.getBlob().get(fileName) != null
-                    && parentCommit.getBlob().get(fileName).equals(fileHash)) {
-
-                if (stage.getTracked().containsKey(fileName)) {
-                    stage.getTracked().remove(fileName);
-                }
-                if (stage.getRemoved().containsKey(fileName)) {
-                    stage.getRemoved().remove(fileName);
-                }
-
-                save();
-
+    public void add(String[] args) {
+        List<String> names = expand(args, workTree.files());
+        for (String fileName : names) {
+            if (!Utils.join(cwd, fileName).isFile()) {
+                throw Utils.error("File does not exist.");
+            }
+        }
+        HashMap<String, String> headFiles = getCommit(headCommit).getBlob();
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        workTree.forEach(names, fileName -> {
+            Blobs file = new Blobs(fileName, cwd, statCache);
+            if (!file.getHash().equals(headFiles.get(fileName))) {
+                objects.writeFile(file.getHash(), file.getFile());
+            }
+            hashes.put(fileName, file.getHash());
+        });
+        for (String fileName : names) {
+            String fileHash = hashes.get(fileName);
+            stage.getRemoved().remove(fileName);
+            if (fileHash.equals(headFiles.get(fileName))) {
+                stage.getTracked().remove(fileName);
             } else {
-                if (stage.getRemoved().containsKey(fileName)) {
-                    stage.getRemoved().remove(fileName);
-                }
-
-
-                File pathToBlob = Utils.join(cwd, ".gitlet/" + fileHash);
-                Utils.writeContents(pathToBlob, file.getContent());
-
-                stage.addFile(fileName, file.getHash());
-
-                save();
+                stage.addFile(fileName, fileHash);
             }
-        } else {
-            System.out.println("File does not exist.");
-            System.exit(0);
         }
+        save();
     }
 
     /**
@@ -138,36 +211,22 @@ public class Commands implements Serializable {
      */
     public void commit(String message) {
         if (stage.getTracked().isEmpty() && stage.getRemoved().isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
         if (message.isEmpty()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error("Please enter a commit message.");
         }
 
 
-        File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit = Utils.
-                readObject(pathToParentCommit, Commits.class);
-
-        HashMap<String, String> currentBlobs = new HashMap<>();
-        if (parentCommit.getBlob() != null) {
-            currentBlobs.putAll(parentCommit.getBlob());
+        Commits parentCommit = getCommit(headCommit);
 
-        }
-        currentBlobs.putAll(stage.getTracked());
-        for (String fileToRemove : stage.getRemoved().keySet()) {
-            currentBlobs.remove(fileToRemove);
-        }
         Commits newCommit = new
-                Commits(message, parentCommit.getHashId(), currentBlobs);
-        File pathToCommit = Utils.join(cwd, ".gitlet/" + newCommit.getHashId());
-        Utils.writeObject(pathToCommit, newCommit);
+                Commits(message, parentCommit.getHashId(),
+                stagedTree(parentCommit));
 
         branches.put(headBranch, newCommit.getHashId());
         headCommit = branches.get(headBranch);
-        commitList.add(newCommit.getHashId());
+        recordCommit(newCommit);
 
         stage.getTracked().clear();
         stage.getRemoved().clear();
@@ -184,56 +243,28 @@ public class Commands implements Serializable {
      */
     public void checkout(String[] args) {
         if (args.length != 3 && args.length != 2 && args.length != 4) {
-            System.out.println("Incorrect Operands");
-            System.exit(0);
+            throw Utils.error("Incorrect Operands");
         } else if ((args.length == 3 && !args[1].equals("--"))
                 || (args.length == 4 && !args[2].equals("--"))) {
-            System.out.println("Incorrect Operands");
-            System.exit(0);
+            throw Utils.error("Incorrect Operands");
         } else {
             if (args.length == 3) {
-                String file = args[2];
-                File pathToParentCommit = Utils.join
-                        (cwd, ".gitlet/" + headCommit);
-                Commits parentCommit =
-                        Utils.readObject(pathToParentCommit, Commits.class);
+                String file = WorkTree.path(args[2]);
+                Commits parentCommit = getCommit(headCommit);
                 if (!parentCommit.getBlob().isEmpty()
                         && !parentCommit.getBlob().containsKey(file)) {
-                    System.out.println("File does not exist in that commit.");
-                    System.exit(0);
+                    throw Utils.error("File does not exist in that commit.");
                 }
-                File pathToCommitFile = Utils.join(cwd,
-                        ".gitlet/" + parentCommit.getBlob().get(file));
-                File replaceFile = Utils.join(cwd, file);
-                Utils.writeContents(replaceFile,
-                        Utils.readContentsAsString(pathToCommitFile));
+                restoreFile(file, parentCommit.getBlob().get(file));
                 save();
             } else if (args.length == 4) {
-                String commitId = args[1];
-                String file = args[3];
-                int count = 0;
-                for (String s : commitList) {
-                    if (s.startsWith(commitId)) {
-                        commitId = s;
-                        count = count + 1;
-                    }
-                }
-                if (count == 0) {
-                    System.out.println("No commit with that id exists.");
-                    System.exit(0);
-                }
-                File pathToRefCommit = Utils.join(cwd, ".gitlet/" + commitId);
-                Commits refCommit = Utils.
-                        readObject(pathToRefCommit, Commits.class);
+                String commitId = resolveCommit(args[1]);
+                String file = WorkTree.path(args[3]);
+                Commits refCommit = getCommit(commitId);
                 if (!refCommit.getBlob().containsKey(file)) {
-                    System.out.println("File does not exist in that commit.");
-                    System.exit(0);
+                    throw Utils.error("File does not exist in that commit.");
                 }
-                File pathToCommitFile = Utils.join(cwd,
-                        ".gitlet/" + refCommit.getBlob().get(file));
-                File replaceFile = Utils.join(cwd, file);
-                Utils.writeContents(replaceFile,
-                        Utils.readContentsAsString(pathToCommitFile));
+                restoreFile(file, refCommit.getBlob().get(file));
                 save();
             } else {
                 String branchName = args[1];
@@ -249,42 +280,15 @@ public class Commands implements Serializable {
      */
     public void checkoutBranch(String branchName) {
         if (!branches.containsKey(branchName)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+            throw Utils.error("No such branch exists.");
         }
         if (branchName.equals(headBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
-        }
-        File pathToBranchCommit = Utils.join
-                (cwd, ".gitlet/" + branches.get(branchName));
-        Commits branchCommit = Utils.
-                readObject(pathToBranchCommit, Commits.class);
-        File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
-        List<String> allFiles = Utils.plainFilenamesIn(cwd);
-        for (String file : allFiles) {
-            if (branchCommit.getBlob().containsKey(file)
-                    && !parentCommit.getBlob().containsKey(file)
-                    && !stage.getTracked().containsKey(file)) {
-                System.out.println("There is an untracked "
-                        + "file in the way;"
-                        + " delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
-        for (String fileName : parentCommit.getBlob().keySet()) {
-            if (!branchCommit.getBlob().containsKey(fileName)) {
-                Utils.restrictedDelete(fileName);
-            }
-        }
-        for (String fileName : branchCommit.getBlob().keySet()) {
-            File pathToFile = Utils.join(cwd,
-                    ".gitlet/" + branchCommit.getBlob().get(fileName));
-            Utils.writeContents(Utils.join(cwd, fileName),
-                    Utils.readContentsAsString(pathToFile));
+            throw Utils.error("No need to checkout the current branch.");
         }
+        Commits branchCommit = getCommit(branches.get(branchName));
+        Commits parentCommit = getCommit(headCommit);
+        untrackedInTheWay(parentCommit, branchCommit);
+        switchFiles(parentCommit, branchCommit);
         headBranch = branchName;
         headCommit = branches.get(branchName);
         save();
@@ -296,88 +300,109 @@ public class Commands implements Serializable {
      * about each commit backwards along the commit tree until
      * the initial commit, following the first parent commit links,
      * ignoring any second parents found in merge commits.
+     *
+     * @param args the arguments of log
      */
-    public void log() {
-        File pathToParentCommit =
-                Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
-        while (parentCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + parentCommit.getHashId());
-            if (parentCommit.isMerged()) {
-                System.out.println("Merge: "
-                        + parentCommit.getParent1Id().substring(0, 7)
-                        + " "
-                        + parentCommit.getParent2Id().substring(0, 7));
-            }
-            System.out.println("Date: " + parentCommit.getTime());
-            System.out.println(parentCommit.getMessage());
-            System.out.println();
-            if (parentCommit.getParentId() != null) {
-                pathToParentCommit = Utils.join
-                        (cwd, ".gitlet/" + parentCommit.getParentId());
-                parentCommit = Utils.readObject
-                        (pathToParentCommit, Commits.class);
-            } else {
-                return;
-            }
-        }
+    public void log(String[] args) {
+        new LogRenderer(getGraph(), this::messageOf, this::dateOf, args)
+                .log(getGraph().position(headCommit));
     }
 
     /**
      * The command global log().
      * Like log, except displays information about all commits ever made.
+     *
+     * @param args the arguments of global-log
      */
-    public void globalLog() {
-        for (String commit : commitList) {
-            File commitFile = Utils.join(cwd, ".gitlet/" + commit);
-            Commits theCommit = Utils.readObject(commitFile, Commits.class);
-            System.out.println("===");
-            System.out.println("commit " + theCommit.getHashId());
-            System.out.println("Date: " + theCommit.getTime());
-            System.out.println(theCommit.getMessage());
-            System.out.println();
-        }
+    public void globalLog(String[] args) {
+        new LogRenderer(getGraph(), this::messageOf, this::dateOf, args)
+                .globalLog();
     }
 
     /**
-     * The command rm.
+     * The command rm [path]....
      * Unstage the file if it is currently staged for addition.
      * If the file is tracked in the current commit,
      * stage it for removal and remove the file from the
      * working directory if the user has not already done so
      * (do not remove it unless it is tracked in the current commit).
+     * Paths are expanded as for add, against the tracked files, and
+     * nothing is changed unless every file can be removed.
+     *
+     * @param args the arguments of rm, the paths from args[1]
+     */
+    public void rm(String[] args) {
+        List<String> names = expand(args, trackedFiles());
+        Commits parentCommit = getCommit(headCommit);
+        for (String fileName : names) {
+            if (!stage.getTracked().containsKey(fileName)
+                    && !parentCommit.getBlob().containsKey(fileName)) {
+                throw Utils.error("No reason to remove the file.");
+            }
+        }
+        for (String fileName : names) {
+            removeFile(fileName);
+        }
+        save();
+    }
+
+    /**
+     * Unstages a file staged for addition, or else stages it for removal
+     * and deletes it from the working directory.
      *
      * @param fileName the name of the file
      */
-    public void rm(String fileName) {
-        File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
+    private void removeFile(String fileName) {
         if (stage.getTracked().containsKey(fileName)) {
             stage.getTracked().remove(fileName);
-            save();
-        } else if (parentCommit.getBlob().containsKey(fileName)) {
+        } else {
             stage.addRemovedFile(fileName, "abc");
+            stage.getUntracked().remove(fileName);
+            workTree.delete(fileName);
+        }
+    }
 
-            if (stage.getTracked().containsKey(fileName)) {
-                stage.getTracked().remove(fileName);
+    /**
+     * Expands the paths given to add or rm. A directory stands for the
+     * candidates below it, "." for all of them, and a glob for the ones
+     * it matches; a directory or glob matching none is kept as given.
+     *
+     * @param args the arguments of the command, the paths from args[1]
+     * @param candidates the paths a directory or glob can stand for
+     * @return the paths, each once, in the order given
+     */
+    private List<String> expand(String[] args, Collection<String> candidates) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int i = 1; i < args.length; i += 1) {
+            String path = WorkTree.path(args[i]);
+            while (path.endsWith("/") && path.length() > 1) {
+                path = path.substring(0, path.length() - 1);
             }
-
-            if (stage.getUntracked().containsKey(fileName)) {
-                stage.getUntracked().remove(fileName);
+            List<String> matched = new ArrayList<>();
+            if (path.equals(".")) {
+                matched.addAll(candidates);
+            } else if (IgnoreRules.isGlob(path)) {
+                Pattern glob = IgnoreRules.glob(path);
+                for (String candidate : candidates) {
+                    if (glob.matcher(candidate).matches()) {
+                        matched.add(candidate);
+                    }
+                }
+            } else if (Utils.join(cwd, path).isDirectory()) {
+                for (String candidate : candidates) {
+                    if (candidate.startsWith(path + "/")) {
+                        matched.add(candidate);
+                    }
+                }
             }
-            File fileToRemove = Utils.join(cwd, fileName);
-            if (fileToRemove.exists()) {
-                Utils.restrictedDelete(fileToRemove);
+            if (matched.isEmpty()) {
+                result.add(path);
+            } else {
+                Collections.sort(matched);
+                result.addAll(matched);
             }
-            save();
-        } else {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
         }
-
+        return new ArrayList<>(result);
     }
 
     /**
@@ -391,12 +416,10 @@ public class Commands implements Serializable {
      */
     public void rmBranch(String branchName) {
         if (!branches.containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         }
         if (branchName.equals(headBranch)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw Utils.error("Cannot remove the current branch.");
         }
         branches.remove(branchName);
         save();
@@ -451,17 +474,14 @@ public class Commands implements Serializable {
      * Helper function to find the modified but not staged commit files.
      */
     public void modifiedHelper() {
-        List<String> allFiles = Utils.plainFilenamesIn(cwd);
-        File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
-        for (String file : allFiles) {
-            Blobs newFile = new Blobs(file, cwd);
+        TreeMap<String, String> allFiles = workTree.snapshot();
+        Commits parentCommit = getCommit(headCommit);
+        for (String file : allFiles.keySet()) {
             if (parentCommit.getBlob().containsKey(file)
-                    && (!newFile.getHash().equals
+                    && (!allFiles.get(file).equals
                     (parentCommit.getBlob().get(file)))
                     && !stage.getTracked().containsKey(file)
-                    && !newFile.getContent().contains("HEAD")) {
+                    && !new Blobs(file, cwd, statCache).contains("HEAD")) {
                 stage.addModified(file, "modified");
             }
         }
@@ -478,42 +498,41 @@ public class Commands implements Serializable {
      * Helper function to find the untracked files.
      */
     public void untrackedHelper() {
-        List<String> allFiles = Utils.plainFilenamesIn(cwd);
-        File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
-        for (String file : allFiles) {
+        TreeMap<String, String> allFiles = workTree.snapshot();
+        Commits parentCommit = getCommit(headCommit);
+        for (String file : allFiles.keySet()) {
             if (!parentCommit.getBlob().containsKey(file)
                     && !stage.getTracked().containsKey(file)) {
-                Blobs untrackedFile = new Blobs(file, cwd);
-                stage.addUntracked(file, untrackedFile.getHash());
+                stage.addUntracked(file, allFiles.get(file));
             }
         }
         save();
     }
 
     /**
-     * The command find(String commitMessage).
+     * The command find [message] or find --grep [text].
      * Prints out the ids of all commits that have the given commit message
      * one per line. If there are multiple such commits,
-     * it prints the ids out on separate lines.
-     *
-     * @param commitMessage the commit message
-     */
-    public void find(String commitMessage) {
-        boolean found = false;
-        for (String commitIds : commitList) {
-            File pathToCommit = Utils.join(cwd, ".gitlet/" + commitIds);
-            Commits theCommit =
-                    Utils.readObject(pathToCommit, Commits.class);
-            if (theCommit.getMessage().equals(commitMessage)) {
-                found = true;
-                System.out.println(commitIds);
-            }
+     * it prints the ids out on separate lines. With --grep, prints the
+     * commits whose message contains the text. Both are answered from
+     * the message index without loading any commit.
+     *
+     * @param args the arguments of find
+     */
+    public void find(String[] args) {
+        List<String> found;
+        if (args.length == 2) {
+            found = getMessages().find(args[1]);
+        } else if (args.length == 3 && args[1].equals("--grep")) {
+            found = getMessages().grep(args[2]);
+        } else {
+            throw Utils.error("Incorrect Operands");
         }
-        if (!found) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+        for (String commitIds : found) {
+            System.out.println(commitIds);
+        }
+        if (found.isEmpty()) {
+            throw Utils.error("Found no commit with that message.");
         }
         save();
     }
@@ -527,11 +546,9 @@ public class Commands implements Serializable {
      */
     public void branch(String branchName) {
         if (branches.containsKey(branchName)) {
-            System.out.println("A branch with that name already exists");
-            System.exit(0);
+            throw Utils.error("A branch with that name already exists");
         } else {
             branches.put(branchName, headCommit);
-            intersection.put(branchName, headCommit);
             save();
         }
     }
@@ -546,43 +563,13 @@ public class Commands implements Serializable {
      */
     public void reset(String commitId) {
 
-        File pathToParentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
-        if (!commitList.contains(commitId)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
+        Commits parentCommit = getCommit(headCommit);
+        commitId = resolveCommit(commitId);
 
-        File pathToRefCommit = Utils.join(cwd, ".gitlet/" + commitId);
-        Commits refCommit = Utils.
-                readObject(pathToRefCommit, Commits.class);
+        Commits refCommit = getCommit(commitId);
 
-        List<String> allFiles = Utils.plainFilenamesIn(cwd);
-        for (String file : allFiles) {
-            if (!parentCommit.getBlob().containsKey(file)
-                    && !stage.getTracked().containsKey(file)
-                    && refCommit.getBlob().containsKey(file)) {
-                System.out.println("There is an untracked "
-                        + "file in the way; "
-                        + "delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
-
-        for (String file : refCommit.getBlob().keySet()) {
-            File pathToCommitFile = Utils.join(cwd,
-                    ".gitlet/" + refCommit.getBlob().get(file));
-            File replaceFile = Utils.join(cwd, file);
-            Utils.writeContents(replaceFile,
-                    Utils.readContentsAsString(pathToCommitFile));
-        }
-
-        for (String file : parentCommit.getBlob().keySet()) {
-            if (!refCommit.getBlob().containsKey(file)) {
-                Utils.restrictedDelete(file);
-            }
-        }
+        untrackedInTheWay(parentCommit, refCommit);
+        switchFiles(parentCommit, refCommit);
         headCommit = commitId;
         branches.put(headBranch, headCommit);
         stage.getTracked().clear();
@@ -604,40 +591,21 @@ public class Commands implements Serializable {
     public void merge(String branchName) {
         mergeFailures(branchName);
         boolean conflict = false;
-        File pathToCurrentCommit = Utils.join(cwd, ".gitlet/" + headCommit);
-        Commits currentCommit =
-                Utils.readObject(pathToCurrentCommit, Commits.class);
-
-        File pathToBranchCommit = Utils.join
-                (cwd, ".gitlet/" + branches.get(branchName));
-        Commits branchCommit = Utils.
-                readObject(pathToBranchCommit, Commits.class);
+        Commits currentCommit = getCommit(headCommit);
+
+        Commits branchCommit = getCommit(branches.get(branchName));
         String splitPoint = splitPointHelper(currentCommit, branchCommit);
-        File pathToSplitPoint = Utils.join(cwd, ".gitlet/" + splitPoint);
-        Commits splitPointCommit = Utils.
-                readObject(pathToSplitPoint, Commits.class);
+        Commits splitPointCommit = getCommit(splitPoint);
         if (splitPointCommit.getHashId().equals(branchCommit.getHashId())) {
-            System.out.println("Given branch "
+            throw Utils.error("Given branch "
                     + "is an ancestor of the current branch.");
-            System.exit(0);
         }
         if (splitPointCommit.getHashId().equals(currentCommit.getHashId())) {
-            for (String fileName : currentCommit.getBlob().keySet()) {
-                if (!branchCommit.getBlob().containsKey(fileName)) {
-                    Utils.restrictedDelete(fileName);
-                }
-            }
-            for (String fileName : branchCommit.getBlob().keySet()) {
-                File pathToFile = Utils.join(cwd,
-                        ".gitlet/" + branchCommit.getBlob().get(fileName));
-                Utils.writeContents(Utils.join(cwd, fileName),
-                        Utils.readContentsAsString(pathToFile));
-            }
+            switchFiles(currentCommit, branchCommit);
             headBranch = branchName;
             headCommit = branches.get(branchName);
             save();
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            throw Utils.error("Current branch fast-forwarded.");
         }
         conflict = mergeWork(currentCommit, branchCommit, splitPointCommit);
 
@@ -656,24 +624,13 @@ public class Commands implements Serializable {
      */
     public void mergeCommit(Commits currentCommit,
                             Commits branchCommit, String branchName) {
-        HashMap<String, String> currentBlobs = new HashMap<>();
-        if (currentCommit.getBlob() != null) {
-            currentBlobs.putAll(currentCommit.getBlob());
-        }
-        currentBlobs.putAll(stage.getTracked());
-        for (String fileToRemove : stage.getRemoved().keySet()) {
-            currentBlobs.remove(fileToRemove);
-        }
         Commits newCommit = new
                 Commits("Merged " + branchName + " into "
                 + headBranch + ".", currentCommit.getHashId(),
-                branchCommit.getHashId(), currentBlobs);
-        File pathToCommit = Utils.join(cwd,
-                ".gitlet/" + newCommit.getHashId());
-        Utils.writeObject(pathToCommit, newCommit);
+                branchCommit.getHashId(), stagedTree(currentCommit));
         branches.put(headBranch, newCommit.getHashId());
         headCommit = branches.get(headBranch);
-        commitList.add(newCommit.getHashId());
+        recordCommit(newCommit);
         stage.getTracked().clear();
         stage.getRemoved().clear();
         stage.getUntracked().clear();
@@ -743,7 +700,7 @@ public class Commands implements Serializable {
             if (!branchCommit.getBlob().containsKey(fileName)
                     && splitPointCommit.getBlob().get(fileName).
                     equals(currentCommit.getBlob().get(fileName))) {
-                rm(fileName);
+                removeFile(fileName);
             }
         }
         return conflict;
@@ -756,14 +713,9 @@ public class Commands implements Serializable {
      * @param fileName     the name of the file being checked out
      */
     public void checkoutMerge(Commits branchCommit, String fileName) {
-        String[] checkoutArray = new String[4];
-        checkoutArray[0] = "checkout";
-        checkoutArray[1] = branchCommit.getHashId();
-        checkoutArray[2] = "--";
-        checkoutArray[3] = fileName;
-        checkout(checkoutArray);
-        Blobs file = new Blobs(fileName, cwd);
-        stage.addFile(fileName, file.getHash());
+        String blobId = branchCommit.getBlob().get(fileName);
+        restoreFile(fileName, blobId);
+        stage.addFile(fileName, blobId);
     }
 
     /**
@@ -775,26 +727,33 @@ public class Commands implements Serializable {
      */
     public void mergeHelper(String fileName, Commits currentCommit,
                             Commits branchCommit) {
-        String currentFileContent = "";
-        String givenFileContent = "";
         String top = "<<<<<<< HEAD\n";
-        File currentFile = Utils.join(cwd,
-                ".gitlet/" + currentCommit.getBlob().get(fileName));
-        if (currentFile.exists()) {
-            currentFileContent = Utils.readContentsAsString(currentFile);
-        }
         String middle = "=======\n";
-        File givenFile = Utils.join(cwd,
-                ".gitlet/" + branchCommit.getBlob().get(fileName));
-        if (givenFile.exists()) {
-            givenFileContent = Utils.readContentsAsString(givenFile);
-        }
         String end = ">>>>>>>\n";
-        String result = top + currentFileContent
-                + middle + givenFileContent + end;
         File toFile = Utils.join(cwd, fileName);
-        Utils.writeContents(toFile, result);
-        Blobs file = new Blobs(fileName, cwd);
+        toFile.getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(toFile.toPath()), Blobs.CHUNK)) {
+            out.write(top.getBytes(StandardCharsets.UTF_8));
+            String currentBlob = currentCommit.getBlob().get(fileName);
+            if (objects.contains(currentBlob)) {
+                try (InputStream in = objects.open(currentBlob)) {
+                    in.transferTo(out);
+                }
+            }
+            out.write(middle.getBytes(StandardCharsets.UTF_8));
+            String givenBlob = branchCommit.getBlob().get(fileName);
+            if (objects.contains(givenBlob)) {
+                try (InputStream in = objects.open(givenBlob)) {
+                    in.transferTo(out);
+                }
+            }
+            out.write(end.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Blobs file = new Blobs(fileName, cwd, statCache);
+        objects.writeFile(file.getHash(), file.getFile());
         stage.addFile(fileName, file.getHash());
     }
 
@@ -806,44 +765,488 @@ public class Commands implements Serializable {
     public void mergeFailures(String branchName) {
         if (!stage.getTracked().isEmpty()
                 || !stage.getRemoved().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw Utils.error("You have uncommitted changes.");
         }
         if (!branches.containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         }
         if (branchName.equals(headBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw Utils.error("Cannot merge a branch with itself.");
         }
 
-        File pathToParentCommit = Utils.join(cwd,
-                ".gitlet/" + headCommit);
-        Commits parentCommit =
-                Utils.readObject(pathToParentCommit, Commits.class);
+        Commits parentCommit = getCommit(headCommit);
 
-        File pathToBranchCommit = Utils.join(cwd,
-                ".gitlet/" + branches.get(branchName));
-        Commits branchCommit = Utils.
-                readObject(pathToBranchCommit, Commits.class);
+        Commits branchCommit = getCommit(branches.get(branchName));
 
-        List<String> allFiles = Utils.plainFilenamesIn(cwd);
-        for (String file : allFiles) {
-            if (!parentCommit.getBlob().
-                    containsKey(file)
+        untrackedInTheWay(parentCommit, branchCommit);
+    }
+
+    /**
+     * The command repack().
+     * Folds every loose object in the .gitlet directory into a packfile.
+     * Each version of a file is offered the previous version of the same
+     * file as its delta base.
+     */
+    public void repack() {
+        int packed = objects.repack(deltaBases());
+        System.out.println("Packed " + packed + " objects.");
+    }
+
+    /**
+     * The command gc.
+     * Deletes the objects no branch, commit or staged file can reach,
+     * once they are older than gc.pruneExpire days, and packs the rest
+     * into one pack. The commit graph, message index and prefix index
+     * are then rewritten without the commits that were deleted.
+     */
+    public void gc() {
+        int deleted = objects.gc(reachable(), pruneCutoff(), deltaBases());
+        dropDeletedCommits();
+        System.out.println("Deleted " + deleted + " objects.");
+    }
+
+    /**
+     * The command prune.
+     * Deletes the loose objects nothing can reach, once they are older
+     * than gc.pruneExpire days. Packs are left as they are.
+     */
+    public void prune() {
+        int deleted = objects.prune(reachable(), pruneCutoff());
+        dropDeletedCommits();
+        System.out.println("Deleted " + deleted + " objects.");
+    }
+
+    /**
+     * Pairs every blob after the first version of a file with the blob
+     * of the version before it, walking the commits in the order they
+     * were made, for repack to store one as a delta of the other.
+     *
+     * @return the base of each blob that has one
+     */
+    private LinkedHashMap<String, String> deltaBases() {
+        LinkedHashMap<String, String> bases = new LinkedHashMap<>();
+        HashMap<String, String> last = new HashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        CommitGraph commitGraph = getGraph();
+        for (int i = 0; i < commitGraph.size(); i += 1) {
+            String commitId = commitGraph.id(i);
+            if (!objects.contains(commitId)) {
+                continue;
+            }
+            Commits commit = getCommit(commitId);
+            for (Map.Entry<String, String> file
+                    : commit.getBlob().entrySet()) {
+                String previous = last.put(file.getKey(), file.getValue());
+                if (seen.add(file.getValue()) && previous != null) {
+                    bases.put(file.getValue(), previous);
+                }
+            }
+        }
+        return bases;
+    }
+
+    /**
+     * Marks every object that must be kept: the commits reachable from a
+     * branch, their trees and blobs, and the staged blobs. Commits are
+     * found by walking parents in the commit graph; their trees are then
+     * read on core.parallelism threads into one shared set, so a tree
+     * shared by many commits is read once.
+     *
+     * @return the hashIds of the reachable objects
+     */
+    private Set<String> reachable() {
+        CommitGraph commitGraph = getGraph();
+        boolean[] seen = new boolean[commitGraph.size()];
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        for (String branchHead : branches.values()) {
+            int pos = commitGraph.position(branchHead);
+            if (pos >= 0 && !seen[pos]) {
+                seen[pos] = true;
+                pending.push(pos);
+            }
+        }
+        List<String> commitIds = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            int pos = pending.pop();
+            commitIds.add(commitGraph.id(pos));
+            for (int parent : new int[] {commitGraph.parent1(pos),
+                                         commitGraph.parent2(pos)}) {
+                if (parent >= 0 && !seen[parent]) {
+                    seen[parent] = true;
+                    pending.push(parent);
+                }
+            }
+        }
+        Set<String> marked = ConcurrentHashMap.newKeySet();
+        marked.addAll(commitIds);
+        marked.addAll(stage.getTracked().values());
+        Trace.Phase phase = Trace.phase("mark");
+        try (phase) {
+            workTree.forEach(commitIds, commitId -> {
+                // Not through getCommit: the commit cache is not safe to
+                // use from these threads, and each commit is read once.
+                Commits commit = objects.readObject(commitId, Commits.class);
+                commit.setObjects(objects);
+                if (commit.getTree() != null) {
+                    Tree.mark(objects, commit.getTree(), marked);
+                } else {
+                    marked.addAll(commit.getBlob().values());
+                }
+            });
+        }
+        return marked;
+    }
+
+    /**
+     * Gets the time before which unreachable objects are deleted, from
+     * gc.pruneExpire, in days.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    private long pruneCutoff() {
+        long days = Math.max(0, config.getInt(Config.PRUNE_EXPIRE, 14));
+        return System.currentTimeMillis() - days * 24 * 60 * 60 * 1000;
+    }
+
+    /**
+     * Rewrites the commit graph, message index and prefix index without
+     * the commits that are no longer in the object store.
+     */
+    private void dropDeletedCommits() {
+        CommitGraph commitGraph = getGraph();
+        boolean[] keep = new boolean[commitGraph.size()];
+        Set<String> kept = new HashSet<>();
+        for (int i = 0; i < keep.length; i += 1) {
+            keep[i] = objects.contains(commitGraph.id(i));
+            if (keep[i]) {
+                kept.add(commitGraph.id(i));
+            }
+        }
+        if (kept.size() == keep.length) {
+            return;
+        }
+        commitGraph.retain(keep);
+        getMessages().retain(kept);
+        new CommitIndex(Utils.join(cwd, ".gitlet"), commitGraph).rebuild();
+        index = null;
+        commits = null;
+    }
+
+    /**
+     * The command config(String[] args).
+     * With a key, prints the value of that setting;
+     * with a key and a value, changes the setting.
+     *
+     * @param args The arguments of config.
+     */
+    public void config(String[] args) {
+        if (args.length == 2) {
+            System.out.println(config.get(args[1], ""));
+        } else if (args.length == 3) {
+            config.set(args[1], args[2]);
+        } else {
+            throw Utils.error("Incorrect Operands");
+        }
+    }
+
+    /**
+     * Gets the list of all commits, in the order they were made.
+     *
+     * @return the hashIds of all commits
+     */
+    private List<String> getCommitList() {
+        return getGraph().ids();
+    }
+
+    /**
+     * Gets the message of a commit from the message index, or from the
+     * commit itself if the index does not line up with the graph.
+     *
+     * @param pos the position of the commit in the commit graph
+     * @return its message
+     */
+    private String messageOf(int pos) {
+        if (indexed(pos)) {
+            return getMessages().message(pos);
+        }
+        return getCommit(getGraph().id(pos)).getMessage();
+    }
+
+    /**
+     * Gets the date of a commit, as it was written at commit time, from
+     * the message index, or from the commit itself if the index does not
+     * line up with the graph.
+     *
+     * @param pos the position of the commit in the commit graph
+     * @return its date
+     */
+    private String dateOf(int pos) {
+        if (indexed(pos)) {
+            return getMessages().time(pos);
+        }
+        return getCommit(getGraph().id(pos)).getTime();
+    }
+
+    /**
+     * Whether the message index holds the commit at a position of the
+     * commit graph. Only the record at that position is read, so log
+     * reads no more of the index than the commits it prints.
+     *
+     * @param pos the position of the commit in the commit graph
+     * @return true if it does
+     */
+    private boolean indexed(int pos) {
+        MessageIndex messageIndex = getMessages();
+        return pos < messageIndex.size()
+                && messageIndex.id(pos).equals(getGraph().id(pos));
+    }
+
+    /**
+     * Resolves a full or abbreviated commit id through the prefix index.
+     * Exits if no commit, or more than one, starts with it.
+     *
+     * @param prefix the full or abbreviated hashId
+     * @return the full hashId
+     */
+    private String resolveCommit(String prefix) {
+        if (index == null) {
+            index = new CommitIndex(Utils.join(cwd, ".gitlet"), getGraph());
+        }
+        List<String> matches = index.resolve(prefix);
+        if (matches.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
+        }
+        return matches.get(0);
+    }
+
+    /**
+     * Gets the commit graph, loading it on first use. A repository that
+     * still has the older .gitlet/commits list ("GCML", a version number,
+     * then binary hashIds) has its graph built from it once.
+     *
+     * @return the commit graph
+     */
+    private CommitGraph getGraph() {
+        if (graph == null) {
+            File gitlet = Utils.join(cwd, ".gitlet");
+            graph = new CommitGraph(gitlet);
+            File oldList = Utils.join(gitlet, "commits");
+            if (!graph.exists() && oldList.exists()) {
+                byte[] bytes = Utils.readContents(oldList);
+                for (int i = 8; i < bytes.length; i += Utils.UID_BYTES) {
+                    graph.add(getCommit(Utils.bytesToUid(bytes, i)));
+                }
+                oldList.delete();
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Writes the tree of a new commit: the tree of its parent with the
+     * staged files added and the files staged for removal removed. Only
+     * the trees on the paths of those files are written again.
+     *
+     * @param parentCommit the parent commit
+     * @return the hashId of the new tree
+     */
+    private String stagedTree(Commits parentCommit) {
+        TreeMap<String, String> changes = new TreeMap<>(stage.getTracked());
+        for (String fileToRemove : stage.getRemoved().keySet()) {
+            changes.put(fileToRemove, null);
+        }
+        String parentTree = parentCommit.getTree();
+        if (parentTree == null) {
+            parentTree = Tree.write(objects, parentCommit.getBlob());
+        }
+        return Tree.update(objects, parentTree, changes);
+    }
+
+    /**
+     * Stores a new commit and adds it to the commit graph.
+     *
+     * @param commit the commit
+     */
+    private void recordCommit(Commits commit) {
+        byte[] bytes = Utils.serialize(commit);
+        commit.setObjects(objects);
+        objects.writeBytes(commit.getHashId(), bytes);
+        getCommits().put(commit, bytes.length);
+        getMessages().add(commit);
+        getGraph().add(commit);
+    }
+
+    /**
+     * Gets the index of commit messages. A repository made before there
+     * was one has it built from the commit graph once.
+     *
+     * @return the message index
+     */
+    private MessageIndex getMessages() {
+        if (messages == null) {
+            messages = new MessageIndex(Utils.join(cwd, ".gitlet"));
+            if (!messages.exists()) {
+                CommitGraph commitGraph = getGraph();
+                for (int i = 0; i < commitGraph.size(); i += 1) {
+                    messages.add(getCommit(commitGraph.id(i)));
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Loads a commit through the commit cache.
+     *
+     * @param commitId the hashId of the commit
+     * @return the commit
+     */
+    private Commits getCommit(String commitId) {
+        return getCommits().get(commitId);
+    }
+
+    /**
+     * Gets the cache every commit is loaded through, creating it on
+     * first use with the limits from core.commitCacheSize and
+     * core.commitCacheBytes.
+     *
+     * @return the commit cache
+     */
+    public CommitCache getCommits() {
+        if (commits == null) {
+            commits = new CommitCache(objects,
+                    config.getInt(Config.COMMIT_CACHE_SIZE, 1024),
+                    config.getInt(Config.COMMIT_CACHE_BYTES, 64 << 20));
+        }
+        return commits;
+    }
+
+    /**
+     * Changes the working directory from the files of one commit to the
+     * files of another. Files only in the source are deleted, and files
+     * that differ between the two are written. A file the same in both
+     * is only written again if the working copy no longer matches it,
+     * which the stat cache answers without reading unchanged files.
+     * Files are checked and written on up to checkout.workers threads;
+     * their directories are created first, parents before children.
+     *
+     * @param source the commit the working directory is at
+     * @param target the commit to switch to
+     */
+    private void switchFiles(Commits source, Commits target) {
+        HashMap<String, String> from = source.getBlob();
+        HashMap<String, String> to = target.getBlob();
+        for (String fileName : from.keySet()) {
+            if (!to.containsKey(fileName)) {
+                workTree.delete(fileName);
+            }
+        }
+        int workers = Math.max(1, config.getInt(Config.CHECKOUT_WORKERS,
+                Runtime.getRuntime().availableProcessors()));
+        List<String> stale = new ArrayList<>();
+        List<String> same = new ArrayList<>();
+        for (Map.Entry<String, String> file : to.entrySet()) {
+            if (file.getValue().equals(from.get(file.getKey()))) {
+                same.add(file.getKey());
+            } else {
+                stale.add(file.getKey());
+            }
+        }
+        Set<String> modified = ConcurrentHashMap.newKeySet();
+        Trace.Phase checkPhase = Trace.phase("check files");
+        try (checkPhase) {
+            WorkTree.forEach(same, fileName -> {
+                File working = Utils.join(cwd, fileName);
+                if (!working.isFile() || !to.get(fileName).equals
+                        (statCache.hash(fileName, working))) {
+                    modified.add(fileName);
+                }
+            }, workers);
+        }
+        stale.addAll(modified);
+        TreeSet<String> dirs = new TreeSet<>();
+        for (String fileName : stale) {
+            int slash = fileName.lastIndexOf('/');
+            if (slash > 0) {
+                dirs.add(fileName.substring(0, slash));
+            }
+        }
+        for (String dir : dirs) {
+            Utils.join(cwd, dir).mkdirs();
+        }
+        Trace.Phase writePhase = Trace.phase("write files");
+        try (writePhase) {
+            WorkTree.forEach(stale, fileName ->
+                    writeFile(fileName, to.get(fileName)), workers);
+        }
+        workTree.invalidate();
+    }
+
+    /**
+     * Writes the content of a blob to a file in the working directory.
+     *
+     * @param fileName the name of the file
+     * @param blobId   the hashId of the blob
+     */
+    private void restoreFile(String fileName, String blobId) {
+        Utils.join(cwd, fileName).getParentFile().mkdirs();
+        writeFile(fileName, blobId);
+        workTree.invalidate();
+    }
+
+    /**
+     * Writes the content of a blob to a file whose directory exists, and
+     * records its hash in the stat cache. Safe to call from several
+     * threads at once.
+     *
+     * @param fileName the name of the file
+     * @param blobId   the hashId of the blob
+     */
+    private void writeFile(String fileName, String blobId) {
+        File dest = Utils.join(cwd, fileName);
+        objects.copyTo(blobId, dest);
+        statCache.update(fileName, dest, blobId);
+    }
+
+    /**
+     * Gets the paths of the files tracked by the head commit or staged.
+     *
+     * @return the paths
+     */
+    private Collection<String> trackedFiles() {
+        HashSet<String> result = new HashSet<>();
+        if (headCommit != null) {
+            result.addAll(getCommit(headCommit).getBlob().keySet());
+        }
+        result.addAll(stage.getTracked().keySet());
+        return result;
+    }
+
+    /**
+     * Exits if a file that is not tracked by the current commit,
+     * nor staged, would be overwritten by the target commit.
+     *
+     * @param currentCommit the current commit
+     * @param targetCommit  the commit being checked out
+     */
+    private void untrackedInTheWay(Commits currentCommit,
+                                   Commits targetCommit) {
+        for (String file : workTree.files()) {
+            if (!currentCommit.getBlob().containsKey(file)
                     && !stage.getTracked().containsKey(file)
-                    && branchCommit.getBlob().containsKey(file)) {
-                System.out.println("There is an untracked "
-                        + "file in the way; delete it,"
-                        + " or add and commit it first.");
-                System.exit(0);
+                    && targetCommit.getBlob().containsKey(file)) {
+                throw Utils.error("There is an untracked "
+                        + "file in the way; "
+                        + "delete it, or add and commit it first.");
             }
         }
     }
 
     /**
      * Splitpoint helper.
+     * Finds the best common ancestor of the two commits on the commit graph.
      *
      * @param currentCommit the current commit
      * @param branchCommit  the branch commit
@@ -851,63 +1254,18 @@ public class Commands implements Serializable {
      */
     public String splitPointHelper
     (Commits currentCommit, Commits branchCommit) {
-        ArrayDeque<Commits> commitsArrayDeque = new ArrayDeque<>();
-        HashSet<String> setOfAllCommits = new HashSet<>();
-        String splitPoint = "";
-        commitsArrayDeque.add(branchCommit);
-        while (!commitsArrayDeque.isEmpty()) {
-            ArrayList<String> parentList = new ArrayList<>();
-            Commits n = commitsArrayDeque.remove();
-            if (n != null) {
-                setOfAllCommits.add(n.getHashId());
-            }
-            if (branchCommit.isMerged()
-                    && branchCommit.getParentId() != null) {
-                parentList.add(branchCommit.getParentId());
-                parentList.add(branchCommit.getParent2Id());
-            } else if (!branchCommit.isMerged()
-                    && branchCommit.getParentId() != null) {
-                parentList.add(branchCommit.getParentId());
-            }
-            while (parentList.size() != 0) {
-                File pathToParent = Utils.join(cwd,
-                        ".gitlet/" + parentList.get(0));
-                Commits parent = Utils.
-                        readObject(pathToParent, Commits.class);
-                parentList.remove(0);
-                commitsArrayDeque.add(parent);
-                branchCommit = parent;
-            }
+        CommitGraph commitGraph = getGraph();
+        int splitPoint;
+        Trace.Phase phase = Trace.phase("merge base");
+        try (phase) {
+            splitPoint = new MergeBase(commitGraph).best
+                    (commitGraph.position(currentCommit.getHashId()),
+                     commitGraph.position(branchCommit.getHashId()));
         }
-        ArrayDeque<Commits> bfsFromCurrentBranch = new ArrayDeque<>();
-        bfsFromCurrentBranch.add(currentCommit);
-        while (!bfsFromCurrentBranch.isEmpty()) {
-            Commits n = bfsFromCurrentBranch.remove();
-            if (setOfAllCommits.contains(n.getHashId())) {
-                splitPoint = n.getHashId();
-                return splitPoint;
-            } else {
-                ArrayList<String> parentList = new ArrayList<>();
-                if (currentCommit.isMerged()
-                        && currentCommit.getParentId() != null) {
-                    parentList.add(currentCommit.getParentId());
-                    parentList.add(currentCommit.getParent2Id());
-                } else if (!currentCommit.isMerged()
-                        && currentCommit.getParentId() != null) {
-                    parentList.add(currentCommit.getParentId());
-                }
-                while (parentList.size() != 0) {
-                    File pathToParent = Utils.join(cwd,
-                            ".gitlet/" + parentList.get(0));
-                    Commits parent = Utils.
-                            readObject(pathToParent, Commits.class);
-                    parentList.remove(0);
-                    bfsFromCurrentBranch.add(parent);
-                    currentCommit = parent;
-                }
-            }
+        if (splitPoint < 0) {
+            return "";
         }
-        return splitPoint;
+        return commitGraph.id(splitPoint);
     }
 
     /**
@@ -916,14 +1274,29 @@ public class Commands implements Serializable {
     private String cwd;
 
     /**
-     * A map representing the branches and their respective commits.
+     * The settings of the repository.
      */
-    private TreeMap<String, String> branches;
+    private Config config;
+
+    /**
+     * The store that holds every blob and commit.
+     */
+    private ObjectStore objects;
+
+    /**
+     * The size, modification time and hash of every working file.
+     */
+    private StatCache statCache;
+
+    /**
+     * The scanner of the working directory.
+     */
+    private WorkTree workTree;
 
     /**
-     * A map representing where the intersection of the branches occur.
+     * A map representing the branches and their respective commits.
      */
-    private HashMap<String, String> intersection = new HashMap<>();
+    private TreeMap<String, String> branches;
 
 
     /**
@@ -939,11 +1312,41 @@ public class Commands implements Serializable {
     /**
      * A map of files and their hash id that are tracked in the stage.
      */
-    private Staging stage;
+    private Staging stage = new Staging();
+
+    /**
+     * The cache of deserialized commits, or null before first use.
+     */
+    private CommitCache commits;
+
+    /**
+     * The commit graph, or null before first use.
+     */
+    private CommitGraph graph;
+
+    /**
+     * The index of abbreviated commit ids, or null before first use.
+     */
+    private CommitIndex index;
+
+    /**
+     * The index of commit messages, or null before first use.
+     */
+    private MessageIndex messages;
+
+    /**
+     * The file holding the name of the head branch.
+     */
+    private StateFile headFile;
+
+    /**
+     * The file holding the branches.
+     */
+    private StateFile refsFile;
 
     /**
-     * A list of all commits being made.
+     * The file holding the stage.
      */
-    private ArrayList<String> commitList = new ArrayList<>();
+    private StateFile stageFile;
 
 }
@@ -0,0 +1,142 @@
+package gitlet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** CommitCache class for Gitlet, a class that every commit is loaded
+ *  through, keeping the most recently used deserialized commits so
+ *  that a command reads and deserializes each one only once.
+ *  The cache is bounded both by a number of entries and by an estimate
+ *  of their size, the length of their serialized form; the least
+ *  recently used commits are evicted first.  It is not thread-safe, so
+ *  work spread over threads, such as the mark of gc, reads commits from
+ *  the object store itself.
+ *  @author Minh Nguyen
+ */
+public class CommitCache {
+
+    /** Create a cache in front of an object store.
+     * @param store the store commits are read from.
+     * @param maxEntries the most commits to keep.
+     * @param maxBytes the most estimated bytes to keep. */
+    public CommitCache(ObjectStore store, int maxEntries, long maxBytes) {
+        objects = store;
+        entryLimit = Math.max(1, maxEntries);
+        byteLimit = maxBytes;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Get a commit, reading it from the store on a miss.
+     * @param commitId the hashId of the commit.
+     * @return the commit. */
+    public Commits get(String commitId) {
+        Entry entry = entries.get(commitId);
+        if (entry != null) {
+            hits += 1;
+            Trace.count(Trace.Counter.COMMIT_CACHE_HITS);
+            return entry.commit;
+        }
+        misses += 1;
+        Trace.count(Trace.Counter.COMMIT_CACHE_MISSES);
+        byte[] bytes = objects.readBytes(commitId);
+        Commits commit;
+        Trace.Phase phase = Trace.phase("deserialize");
+        try (phase) {
+            commit = Utils.deserialize(bytes, Commits.class);
+        }
+        commit.setObjects(objects);
+        put(commitId, commit, bytes.length);
+        return commit;
+    }
+
+    /** Add a commit that was just made.
+     * @param commit the commit.
+     * @param size the length of its serialized form. */
+    public void put(Commits commit, long size) {
+        put(commit.getHashId(), commit, size);
+    }
+
+    /** Get the number of lookups that found the commit in the cache.
+     * @return the number of hits. */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Get the number of lookups that read the commit from the store.
+     * @return the number of misses. */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Get the number of commits in the cache.
+     * @return the number of commits. */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Get the estimated size of the commits in the cache.
+     * @return the estimate in bytes. */
+    public long bytes() {
+        return bytes;
+    }
+
+    /** Add a commit and evict the least recently used ones until the
+     * cache is within its limits again.
+     * @param commitId the hashId of the commit.
+     * @param commit the commit.
+     * @param size the length of its serialized form. */
+    private void put(String commitId, Commits commit, long size) {
+        Entry old = entries.put(commitId, new Entry(commit, size));
+        if (old != null) {
+            bytes -= old.size;
+        }
+        bytes += size;
+        Iterator<Map.Entry<String, Entry>> eldest =
+                entries.entrySet().iterator();
+        while ((entries.size() > entryLimit || bytes > byteLimit)
+                && entries.size() > 1) {
+            bytes -= eldest.next().getValue().size;
+            eldest.remove();
+        }
+    }
+
+    /** A cached commit and its estimated size. */
+    private static class Entry {
+
+        /** An entry for COMMIT, of estimated SIZE.
+         * @param commit the commit.
+         * @param size the length of its serialized form. */
+        Entry(Commits commit, long size) {
+            this.commit = commit;
+            this.size = size;
+        }
+
+        /** The commit. */
+        private final Commits commit;
+
+        /** The length of its serialized form. */
+        private final long size;
+    }
+
+    /** The store commits are read from. */
+    private ObjectStore objects;
+
+    /** The most commits to keep. */
+    private int entryLimit;
+
+    /** The most estimated bytes to keep. */
+    private long byteLimit;
+
+    /** The cached commits, least recently used first. */
+    private LinkedHashMap<String, Entry> entries;
+
+    /** The estimated size of the cached commits. */
+    private long bytes;
+
+    /** The number of lookups that found the commit in the cache. */
+    private long hits;
+
+    /** The number of lookups that read the commit from the store. */
+    private long misses;
+
+}
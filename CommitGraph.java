@@ -0,0 +1,255 @@
+package gitlet;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** CommitGraph class for Gitlet, a class that keeps the shape of the
+ *  commit history in .gitlet/commit-graph, so that walking ancestry
+ *  never needs to deserialize a commit.
+ *  Commits are numbered in the order they were made.  Each record holds
+ *  the binary hashId, the positions of both parents (-1 for none), the
+ *  generation number (1 for the initial commit, otherwise one more than
+ *  the largest generation of its parents) and the commit timestamp.
+ *  The file is "GCGR", a version number, then the fixed-size records;
+ *  commit and merge append one record.
+ *  @author Minh Nguyen
+ */
+public class CommitGraph {
+
+    /** Load the commit graph of the given .gitlet directory.
+     * @param gitletDir the .gitlet directory. */
+    public CommitGraph(File gitletDir) {
+        file = Utils.join(gitletDir, "commit-graph");
+        byte[] bytes = file.isFile() ? Utils.readContents(file) : new byte[0];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length > 0 && (buf.getInt() != MAGIC
+                || buf.getInt() != VERSION)) {
+            throw Utils.error("Unknown format of commit-graph.");
+        }
+        int count = Math.max(0, (bytes.length - HEADER) / RECORD);
+        ids = new byte[count * Utils.UID_BYTES];
+        parent1 = new int[count];
+        parent2 = new int[count];
+        generation = new int[count];
+        timestamp = new long[count];
+        for (int i = 0; i < count; i += 1) {
+            buf.get(ids, i * Utils.UID_BYTES, Utils.UID_BYTES);
+            parent1[i] = buf.getInt();
+            parent2[i] = buf.getInt();
+            generation[i] = buf.getInt();
+            timestamp[i] = buf.getLong();
+        }
+        size = count;
+    }
+
+    /** Whether the graph file exists.
+     * @return true if it does. */
+    public boolean exists() {
+        return file.isFile();
+    }
+
+    /** Get the number of commits in the graph.
+     * @return the number of commits. */
+    public int size() {
+        return size;
+    }
+
+    /** Get the hashId of a commit.
+     * @param pos the position of the commit.
+     * @return its hashId. */
+    public String id(int pos) {
+        return Utils.bytesToUid(ids, pos * Utils.UID_BYTES);
+    }
+
+    /** Get the hashIds of all commits, in the order they were made.
+     * @return the hashIds. */
+    public List<String> ids() {
+        List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i += 1) {
+            result.add(id(i));
+        }
+        return result;
+    }
+
+    /** Get the position of a commit.
+     * @param commitId the hashId of the commit, which may be null.
+     * @return its position, or -1 if it is not in the graph. */
+    public int position(String commitId) {
+        if (positions == null) {
+            positions = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i += 1) {
+                positions.put(id(i), i);
+            }
+        }
+        Integer pos = commitId == null ? null : positions.get(commitId);
+        return pos == null ? -1 : pos;
+    }
+
+    /** Get the position of the first parent of a commit.
+     * @param pos the position of the commit.
+     * @return the position of the parent, or -1 if it has none. */
+    public int parent1(int pos) {
+        return parent1[pos];
+    }
+
+    /** Get the position of the second parent of a commit.
+     * @param pos the position of the commit.
+     * @return the position of the parent, or -1 if it is not a merge. */
+    public int parent2(int pos) {
+        return parent2[pos];
+    }
+
+    /** Get the generation number of a commit.
+     * @param pos the position of the commit.
+     * @return its generation number. */
+    public int generation(int pos) {
+        return generation[pos];
+    }
+
+    /** Get the timestamp of a commit.
+     * @param pos the position of the commit.
+     * @return its time in milliseconds since the epoch. */
+    public long timestamp(int pos) {
+        return timestamp[pos];
+    }
+
+    /** Append a commit to the graph.  Its parents must already be in it.
+     * @param commit the commit.
+     * @return its position. */
+    public int add(Commits commit) {
+        int p1 = position(commit.getParent1Id());
+        int p2 = position(commit.getParent2Id());
+        int gen = 1 + Math.max(p1 < 0 ? 0 : generation[p1],
+                p2 < 0 ? 0 : generation[p2]);
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(file, true))) {
+            if (file.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.write(Utils.uidToBytes(commit.getHashId()));
+            out.writeInt(p1);
+            out.writeInt(p2);
+            out.writeInt(gen);
+            out.writeLong(commit.getTimestamp());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit-graph.");
+        }
+        if (size == parent1.length) {
+            int capacity = Math.max(16, size * 2);
+            ids = Arrays.copyOf(ids, capacity * Utils.UID_BYTES);
+            parent1 = Arrays.copyOf(parent1, capacity);
+            parent2 = Arrays.copyOf(parent2, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+            timestamp = Arrays.copyOf(timestamp, capacity);
+        }
+        System.arraycopy(Utils.uidToBytes(commit.getHashId()), 0,
+                ids, size * Utils.UID_BYTES, Utils.UID_BYTES);
+        parent1[size] = p1;
+        parent2[size] = p2;
+        generation[size] = gen;
+        timestamp[size] = commit.getTimestamp();
+        if (positions != null) {
+            positions.put(commit.getHashId(), size);
+        }
+        size += 1;
+        return size - 1;
+    }
+
+    /** Rewrite the graph with only some of its commits, in the same
+     * order.  A parent that is dropped is no longer linked, and the
+     * generation numbers are computed again.
+     * @param keep whether to keep the commit at each position. */
+    public void retain(boolean[] keep) {
+        int[] moved = new int[size];
+        int kept = 0;
+        for (int i = 0; i < size; i += 1) {
+            moved[i] = keep[i] ? kept++ : -1;
+        }
+        byte[] newIds = new byte[kept * Utils.UID_BYTES];
+        int[] newParent1 = new int[kept];
+        int[] newParent2 = new int[kept];
+        int[] newGeneration = new int[kept];
+        long[] newTimestamp = new long[kept];
+        ByteBuffer out = ByteBuffer.allocate(HEADER + kept * RECORD);
+        out.putInt(MAGIC).putInt(VERSION);
+        for (int i = 0; i < size; i += 1) {
+            int pos = moved[i];
+            if (pos < 0) {
+                continue;
+            }
+            System.arraycopy(ids, i * Utils.UID_BYTES, newIds,
+                    pos * Utils.UID_BYTES, Utils.UID_BYTES);
+            int p1 = parent1[i] < 0 ? -1 : moved[parent1[i]];
+            int p2 = parent2[i] < 0 ? -1 : moved[parent2[i]];
+            newParent1[pos] = p1;
+            newParent2[pos] = p2;
+            newGeneration[pos] = 1 + Math.max(p1 < 0 ? 0 : newGeneration[p1],
+                    p2 < 0 ? 0 : newGeneration[p2]);
+            newTimestamp[pos] = timestamp[i];
+            out.put(newIds, pos * Utils.UID_BYTES, Utils.UID_BYTES);
+            out.putInt(p1).putInt(p2).putInt(newGeneration[pos])
+                    .putLong(newTimestamp[pos]);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(tmp, out.array());
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit-graph.");
+        }
+        ids = newIds;
+        parent1 = newParent1;
+        parent2 = newParent2;
+        generation = newGeneration;
+        timestamp = newTimestamp;
+        size = kept;
+        positions = null;
+    }
+
+    /** Magic number at the start of the file: "GCGR". */
+    private static final int MAGIC = 0x47434752;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Size of the magic number and version. */
+    private static final int HEADER = 8;
+
+    /** Size of one record. */
+    private static final int RECORD = Utils.UID_BYTES + 4 + 4 + 4 + 8;
+
+    /** The graph file. */
+    private File file;
+
+    /** The number of commits. */
+    private int size;
+
+    /** The binary hashIds of the commits, one after another. */
+    private byte[] ids;
+
+    /** The position of the first parent of each commit. */
+    private int[] parent1;
+
+    /** The position of the second parent of each commit. */
+    private int[] parent2;
+
+    /** The generation number of each commit. */
+    private int[] generation;
+
+    /** The timestamp of each commit. */
+    private long[] timestamp;
+
+    /** The position of each hashId, or null before first use. */
+    private HashMap<String, Integer> positions;
+
+}
@@ -0,0 +1,174 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** CommitIndex class for Gitlet, a class that resolves full and
+ *  abbreviated commit ids with a binary search over .gitlet/commit-index,
+ *  a sorted array of binary commit hashes.
+ *  The index covers the first commits of the commit graph; commits made
+ *  since it was written are checked one by one, and once there are more
+ *  than a few hundred of them the index is rebuilt, when it is loaded or
+ *  at the next lookup.
+ *  The file is "GCIX", a version number, the number of commits it
+ *  covers, then their sorted binary hashIds.
+ *  @author Minh Nguyen
+ */
+public class CommitIndex {
+
+    /** Load the index of the given .gitlet directory.
+     * @param gitletDir the .gitlet directory.
+     * @param commitGraph the commit graph the index covers. */
+    public CommitIndex(File gitletDir, CommitGraph commitGraph) {
+        file = Utils.join(gitletDir, "commit-index");
+        graph = commitGraph;
+        load();
+        rebuildIfStale();
+    }
+
+    /** Find the commits whose hashId starts with a prefix.  At most two
+     * are returned, which is enough to tell that a prefix is ambiguous.
+     * @param prefix a full or abbreviated hashId.
+     * @return the matching hashIds. */
+    public List<String> resolve(String prefix) {
+        rebuildIfStale();
+        List<String> result = new ArrayList<>();
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+                || !isHex(prefix)) {
+            return result;
+        }
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < Utils.UID_LENGTH) {
+            padded.append('0');
+        }
+        byte[] lower = Utils.uidToBytes(padded.toString());
+        byte[] probe = new byte[Utils.UID_BYTES];
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(HEADER + mid * Utils.UID_BYTES, probe);
+            if (Arrays.compareUnsigned(probe, lower) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < count && result.size() < 2; i += 1) {
+            index.get(HEADER + i * Utils.UID_BYTES, probe);
+            String id = Utils.bytesToUid(probe, 0);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        for (int i = count; i < graph.size() && result.size() < 2; i += 1) {
+            String id = graph.id(i);
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Rewrite the index so that it covers every commit in the graph. */
+    public void rebuild() {
+        int size = graph.size();
+        byte[][] ids = new byte[size][];
+        for (int i = 0; i < size; i += 1) {
+            ids[i] = Utils.uidToBytes(graph.id(i));
+        }
+        Arrays.sort(ids, Arrays::compareUnsigned);
+        ByteBuffer out = ByteBuffer.allocate(HEADER + size * Utils.UID_BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putInt(size);
+        for (byte[] id : ids) {
+            out.put(id);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(tmp, out.array());
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit-index.");
+        }
+        load();
+    }
+
+    /** Rebuild the index if too many commits were made since it was
+     * written, which a long-lived index, such as the daemon's, only
+     * finds out at a lookup. */
+    private void rebuildIfStale() {
+        if (graph.size() - count > REBUILD_THRESHOLD) {
+            rebuild();
+        }
+    }
+
+    /** Map the index file, if there is one. */
+    private void load() {
+        count = 0;
+        index = null;
+        if (!file.isFile()) {
+            index = ByteBuffer.allocate(HEADER);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer mapped =
+                    in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw Utils.error("Unknown format of commit-index.");
+            }
+            index = mapped;
+            count = Math.min(mapped.getInt(8), graph.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit-index.");
+        }
+    }
+
+    /** Whether a String is made of hexadecimal digits.
+     * @param s the String.
+     * @return true if it is. */
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Magic number at the start of the file: "GCIX". */
+    private static final int MAGIC = 0x47434958;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Size of the magic number, version and count. */
+    private static final int HEADER = 12;
+
+    /** Number of commits outside the index that triggers a rebuild. */
+    private static final int REBUILD_THRESHOLD = 256;
+
+    /** The index file. */
+    private File file;
+
+    /** The commit graph. */
+    private CommitGraph graph;
+
+    /** The contents of the index file. */
+    private ByteBuffer index;
+
+    /** The number of commits in the index. */
+    private int count;
+
+}
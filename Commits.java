@@ -1,6 +1,7 @@
 package gitlet;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -15,32 +16,39 @@ public class Commits implements Serializable {
     /** Create a Commit object with the given parameters.
      * @param msg The log message given by the user.
      * @param parent The hashId of the parent commit.
-     * @param blobs The blobs referenced with the commit;
-     * key = file's name & value = file's hash.
+     * @param treeId The hashId of the tree holding the files of the commit.
      * */
-    public Commits(String msg, String parent, HashMap<String, String> blobs) {
+    public Commits(String msg, String parent, String treeId) {
         message = msg;
         SimpleDateFormat timeStamp =
                 new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
         Date current = new Date();
         time = timeStamp.format(current);
+        timestamp = current.getTime();
         parentId = parent;
         parent2Id = "";
         hashId = Utils.sha1(parentId + time + message);
-        blob = blobs;
+        tree = treeId;
     }
 
+    /** Create a merge Commit object with the given parameters.
+     * @param msg The log message.
+     * @param parent1 The hashId of the first parent commit.
+     * @param parent2 The hashId of the second parent commit.
+     * @param treeId The hashId of the tree holding the files of the commit.
+     * */
     public Commits(String msg, String parent1,
-                   String parent2, HashMap<String, String> blobs) {
+                   String parent2, String treeId) {
         message = msg;
         SimpleDateFormat timeStamp =
                 new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
         Date current = new Date();
         time = timeStamp.format(current);
+        timestamp = current.getTime();
         parentId = parent1;
         parent2Id = parent2;
         hashId = Utils.sha1(parentId + parent2Id + time + message);
-        blob = blobs;
+        tree = treeId;
     }
 
     /** Get the time of the commit.
@@ -49,6 +57,21 @@ public class Commits implements Serializable {
         return time;
     }
 
+    /** Get the time of the commit in milliseconds since the epoch.
+     * Commits made before this was stored have it parsed from their time.
+     * @return the time of the commit. */
+    public long getTimestamp() {
+        if (timestamp == 0 && time != null) {
+            try {
+                return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z")
+                        .parse(time).getTime();
+            } catch (ParseException excp) {
+                return 0;
+            }
+        }
+        return timestamp;
+    }
+
     /** Get the hashId of the parent commit.
      * @return the hashId of the parent commit. */
     public String getParentId() {
@@ -80,10 +103,36 @@ public class Commits implements Serializable {
         return hashId;
     }
 
-    /** Get the blobs associated with the commit.
+    /** Get the blobs associated with the commit, reading its tree on
+     * first use.
      * @return the blobs of the commits. */
     public HashMap<String, String> getBlob() {
-        return blob;
+        if (files == null) {
+            if (blob != null) {
+                files = blob;
+            } else if (tree != null) {
+                Trace.Phase phase = Trace.phase("read trees");
+                try (phase) {
+                    files = Tree.read(objects, tree);
+                }
+            } else {
+                files = new HashMap<>();
+            }
+        }
+        return files;
+    }
+
+    /** Get the hashId of the tree holding the files of the commit.
+     * @return the hashId, or null for a commit that still keeps its
+     * blobs itself. */
+    public String getTree() {
+        return tree;
+    }
+
+    /** Set the object store the tree of the commit is read from.
+     * @param store the object store. */
+    public void setObjects(ObjectStore store) {
+        objects = store;
     }
 
     /** Show whether the commit is a merge commit.
@@ -94,12 +143,19 @@ public class Commits implements Serializable {
         }
         return false;
     }
+    /** Serialization version, kept so that commits written before new
+     * fields were added can still be read. */
+    private static final long serialVersionUID = -3255711692957246980L;
+
     /** The log message given by the user. */
     private String message;
 
     /** The timestamp of the commit. */
     private String time;
 
+    /** The timestamp of the commit in milliseconds since the epoch. */
+    private long timestamp;
+
     /** The hashId of the commit. */
     private String hashId;
 
@@ -112,7 +168,17 @@ public class Commits implements Serializable {
     /** The hashId of the second parent commit. */
     private String parent2Id = "";
 
-    /** The blobs referenced with the commit. */
+    /** The blobs referenced with the commit, kept by commits made
+     * before there were trees. */
     private HashMap<String, String> blob;
 
+    /** The hashId of the tree holding the files of the commit. */
+    private String tree;
+
+    /** The blobs of the commit, once read. */
+    private transient HashMap<String, String> files;
+
+    /** The object store the tree is read from. */
+    private transient ObjectStore objects;
+
 }
\ No newline at end of file
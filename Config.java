@@ -0,0 +1,107 @@
+package gitlet;
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Config class for Gitlet, a class that holds the per-repository
+ *  settings kept in .gitlet/config, one "key = value" line each.
+ *  Settings that are not in the file take their default values.
+ *  @author Minh Nguyen
+ */
+public class Config {
+
+    /** Load the config of the given .gitlet directory.
+     * @param gitletDir the .gitlet directory. */
+    public Config(File gitletDir) {
+        file = Utils.join(gitletDir, "config");
+        values = new TreeMap<>();
+        if (file.isFile()) {
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                int eq = line.indexOf('=');
+                if (eq > 0 && !line.startsWith("#")) {
+                    values.put(line.substring(0, eq).trim(),
+                            line.substring(eq + 1).trim());
+                }
+            }
+        }
+    }
+
+    /** Get a setting.
+     * @param key the name of the setting.
+     * @param defaultValue the value if the setting is not in the file.
+     * @return the value. */
+    public String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    /** Get a numeric setting.
+     * @param key the name of the setting.
+     * @param defaultValue the value if the setting is not in the file.
+     * @return the value. */
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Change a setting and write the config file.
+     * @param key the name of the setting.
+     * @param value the new value. */
+    public void set(String key, String value) {
+        values.put(key, value);
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            out.append(entry.getKey()).append(" = ")
+                    .append(entry.getValue()).append("\n");
+        }
+        Utils.writeContents(file, out.toString());
+    }
+
+    /** Compression level of stored objects, from 0 (stored as is)
+     *  to 9, or -1 for the zlib default. */
+    static final String COMPRESSION = "core.compression";
+
+    /** Number of threads working files are hashed on; defaults to
+     *  the number of processors. */
+    static final String PARALLELISM = "core.parallelism";
+
+    /** Most commits kept deserialized in memory by a command. */
+    static final String COMMIT_CACHE_SIZE = "core.commitCacheSize";
+
+    /** Most estimated bytes of commits kept in memory by a command. */
+    static final String COMMIT_CACHE_BYTES = "core.commitCacheBytes";
+
+    /** Number of threads checkout, reset and merge write files on;
+     *  defaults to the number of processors. */
+    static final String CHECKOUT_WORKERS = "checkout.workers";
+
+    /** Seconds the daemon waits for a command before it exits. */
+    static final String DAEMON_IDLE_TIMEOUT = "daemon.idleTimeout";
+
+    /** Days an unreachable object is kept before gc and prune delete it;
+     *  0 deletes them at once. */
+    static final String PRUNE_EXPIRE = "gc.pruneExpire";
+
+    /** Longest chain of deltas repack builds before storing a blob whole. */
+    static final String PACK_DEPTH = "pack.depth";
+
+    /** Size in bytes above which a blob is never stored as a delta nor
+     *  used as the base of one, so it is only ever streamed. */
+    static final String BIG_FILE_THRESHOLD = "core.bigFileThreshold";
+
+    /** Most bytes of delta bases kept in memory by a command. */
+    static final String DELTA_CACHE_BYTES = "pack.deltaCacheBytes";
+
+    /** The config file. */
+    private File file;
+
+    /** The settings in the file. */
+    private TreeMap<String, String> values;
+
+}
@@ -0,0 +1,358 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** Daemon class for Gitlet, a class that serves the commands of one
+ *  repository from a process that stays up, so that the commit cache,
+ *  commit graph, indexes and stat cache stay loaded between commands.
+ *  "gitlet daemon" serves the repository in the foreground on
+ *  .gitlet/daemon.sock until "gitlet daemon stop" or until no command
+ *  comes for daemon.idleTimeout seconds (0 waits forever).  Main hands
+ *  every command to it through Client.  Commands are run one at a time,
+ *  each with fresh branches, stage and working tree; only what those
+ *  caches hold is kept.  Before each command the daemon compares the
+ *  size, modification time and inode of the files behind the caches
+ *  with what they were after its last command, and drops the caches if
+ *  another process changed them.
+ *  @author Minh Nguyen
+ */
+public class Daemon {
+
+    /** Run the daemon command in this process, which means no daemon
+     * answered for the repository.
+     * @param warm the Commands loaded for the command, kept as the
+     * daemon's first caches.
+     * @param args the command and its operands. */
+    public static void start(Commands warm, String[] args) {
+        File dir = new File(System.getProperty("user.dir"));
+        File socket = Utils.join(dir, ".gitlet", Client.SOCKET);
+        if (args.length == 2 && args[1].equals("stop")) {
+            if (Client.send(args, false) < 0) {
+                socket.delete();
+                throw Utils.error("No daemon is running.");
+            }
+            return;
+        }
+        if (args.length != 1) {
+            throw Utils.error("Incorrect Operands");
+        }
+        try {
+            new Daemon(dir, warm).serve(socket);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot serve on %s: %s", socket.getPath(),
+                    excp.getMessage());
+        }
+    }
+
+    /** A daemon for the repository in a directory.
+     * @param directory its working directory.
+     * @param warm the caches to start with. */
+    Daemon(File directory, Commands warm) {
+        dir = directory.getAbsoluteFile();
+        gitlet = Utils.join(dir, ".gitlet");
+        this.warm = warm;
+        seen = fingerprint();
+        int timeout = new Config(gitlet).getInt(Config.DAEMON_IDLE_TIMEOUT,
+                DEFAULT_IDLE_TIMEOUT);
+        idleTimeout = TimeUnit.SECONDS.toMillis(Math.max(0, timeout));
+    }
+
+    /** Listen on a socket and run the commands sent to it until stopped
+     * or idle for too long.
+     * @param socket the socket. */
+    private void serve(File socket) throws IOException {
+        SocketChannel running = Client.connect(socket);
+        if (running != null) {
+            running.close();
+            throw Utils.error("A daemon is already running.");
+        }
+        socket.delete();
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Serving " + dir + ".");
+            System.out.flush();
+            long idleSince = System.currentTimeMillis();
+            while (!stopped) {
+                selector.select(idleTimeout);
+                selector.selectedKeys().clear();
+                SocketChannel client = server.accept();
+                if (client == null) {
+                    if (idleTimeout > 0 && System.currentTimeMillis()
+                            - idleSince >= idleTimeout) {
+                        break;
+                    }
+                    continue;
+                }
+                try (client) {
+                    handle(client);
+                } catch (IOException excp) {
+                    System.err.println("Lost a client: " + excp.getMessage());
+                }
+                idleSince = System.currentTimeMillis();
+            }
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Read a command from a client, run it with its output sent back,
+     * and send its exit status.
+     * @param client the connection. */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream
+                (Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream
+                (Channels.newOutputStream(client), Client.BUFFER + 8));
+        if (in.readInt() != Client.MAGIC || in.readInt() != Client.VERSION) {
+            return;
+        }
+        String cwd = in.readUTF();
+        boolean trace = in.readBoolean();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        Frames frames = new Frames(out);
+        PrintStream clientOut = new PrintStream(frames.channel(Client.OUT));
+        PrintStream clientErr = new PrintStream(frames.channel(Client.ERR));
+        int status;
+        System.setOut(clientOut);
+        System.setErr(clientErr);
+        try {
+            status = run(new File(cwd), args, trace);
+        } finally {
+            clientOut.flush();
+            clientErr.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        frames.flush();
+        out.writeByte(Client.EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    /** Run one command for a client, whose output goes to System.out
+     * and System.err.
+     * @param cwd the working directory of the client.
+     * @param args the command and its operands.
+     * @param trace whether to print a trace of the command.
+     * @return the exit status. */
+    private int run(File cwd, String[] args, boolean trace) {
+        if (!sameFile(dir, cwd)) {
+            System.err.println("The daemon serves " + dir + ".");
+            return 1;
+        }
+        if (args.length > 0 && args[0].equals("daemon")) {
+            if (args.length == 2 && args[1].equals("stop")) {
+                stopped = true;
+            } else {
+                System.out.println("A daemon is already running.");
+            }
+            return 0;
+        }
+        String now = fingerprint();
+        if (!now.equals(seen)) {
+            warm = null;
+        }
+        System.setProperty("user.dir", dir.getPath());
+        Trace.setEnabled(trace);
+        int status = 0;
+        try {
+            warm = Main.run(args, warm);
+        } catch (RuntimeException excp) {
+            warm = null;
+            System.err.println(excp);
+            status = 1;
+        }
+        if (args.length > 0 && args[0].equals("config")) {
+            warm = null;
+        }
+        seen = fingerprint();
+        return status;
+    }
+
+    /** Whether two paths name the same directory.
+     * @param a a path.
+     * @param b another path.
+     * @return true if they do. */
+    private static boolean sameFile(File a, File b) {
+        try {
+            return Files.isSameFile(a.toPath(), b.toPath());
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Describe the files behind the caches, so that a change made by
+     * another process can be noticed.
+     * @return the size, modification time and inode of each file. */
+    private String fingerprint() {
+        StringBuilder print = new StringBuilder();
+        for (String name : WATCHED) {
+            stamp(print, Utils.join(gitlet, name));
+        }
+        File[] packs = Utils.join(gitlet, "pack").listFiles();
+        if (packs != null) {
+            Arrays.sort(packs);
+            for (File pack : packs) {
+                stamp(print, pack);
+            }
+        }
+        return print.toString();
+    }
+
+    /** Add a line describing a file to a fingerprint.
+     * @param print the fingerprint.
+     * @param file the file. */
+    private static void stamp(StringBuilder print, File file) {
+        print.append(file.getName());
+        try {
+            BasicFileAttributes attributes = Files.readAttributes
+                    (file.toPath(), BasicFileAttributes.class);
+            print.append(' ').append(attributes.size())
+                    .append(' ').append(attributes.lastModifiedTime()
+                            .to(TimeUnit.NANOSECONDS))
+                    .append(' ').append(attributes.fileKey());
+        } catch (IOException excp) {
+            print.append(" missing");
+        }
+        print.append('\n');
+    }
+
+    /** Buffer of the output of a command, sent to the client as frames
+     * in the order it was written: what is buffered for one channel is
+     * sent before anything written to the other. */
+    private static class Frames {
+
+        /** Frames sent on a connection.
+         * @param out the connection to the client. */
+        Frames(DataOutputStream out) {
+            this.out = out;
+        }
+
+        /** Get a stream writing to one channel.
+         * @param channel Client.OUT or Client.ERR.
+         * @return the stream. */
+        OutputStream channel(byte channel) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                        throws IOException {
+                    Frames.this.write(channel, b, off, len);
+                }
+            };
+        }
+
+        /** Buffer bytes written to a channel.
+         * @param channel the channel.
+         * @param b the bytes.
+         * @param off the first byte.
+         * @param len the number of bytes. */
+        synchronized void write(byte channel, byte[] b, int off, int len)
+                throws IOException {
+            if (channel != pending) {
+                sendFrame();
+                pending = channel;
+            }
+            while (len > 0) {
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == buffer.length) {
+                    sendFrame();
+                }
+            }
+        }
+
+        /** Send what is buffered and flush the connection. */
+        synchronized void flush() throws IOException {
+            sendFrame();
+            out.flush();
+        }
+
+        /** Send what is buffered as one frame. */
+        private void sendFrame() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            out.writeByte(pending);
+            out.writeInt(count);
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+
+        /** The connection to the client. */
+        private final DataOutputStream out;
+
+        /** The bytes not sent yet. */
+        private final byte[] buffer = new byte[Client.BUFFER];
+
+        /** The number of bytes in the buffer. */
+        private int count;
+
+        /** The channel of the bytes in the buffer. */
+        private byte pending = Client.OUT;
+    }
+
+    /** Files in .gitlet whose contents the caches hold. */
+    private static final String[] WATCHED =
+        {"config", "commit-graph", "commit-index", "messages",
+         "message-index", "statcache"};
+
+    /** Seconds without a command after which the daemon exits, unless
+     * daemon.idleTimeout says otherwise. */
+    private static final int DEFAULT_IDLE_TIMEOUT = 600;
+
+    /** The working directory of the repository. */
+    private File dir;
+
+    /** The .gitlet directory. */
+    private File gitlet;
+
+    /** Milliseconds without a command after which the daemon exits, or 0
+     * to wait forever. */
+    private long idleTimeout;
+
+    /** The Commands of the last command, holding the caches, or null to
+     * load them again. */
+    private Commands warm;
+
+    /** The fingerprint after the last command. */
+    private String seen;
+
+    /** Whether a client asked the daemon to stop. */
+    private boolean stopped;
+
+}
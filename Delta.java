@@ -0,0 +1,215 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Delta class for Gitlet, a class that encodes one version of a file
+ *  as copy and insert instructions against another version.
+ *  A delta is the length of the base and of the result, then a sequence
+ *  of instructions: COPY with an offset and a length in the base, or
+ *  INSERT with a length and that many literal bytes.  Numbers are
+ *  written as unsigned varints.
+ *  The base is cut into blocks of BLOCK bytes, each indexed by a hash;
+ *  the result is scanned with a rolling hash of the same width, and a
+ *  block whose bytes match is extended as far as both sides agree.
+ *  @author Minh Nguyen
+ */
+public class Delta {
+
+    /** Encode a result against a base.
+     * @param base the base.
+     * @param result the result.
+     * @return the delta, or null if it would not be much smaller than
+     * the result. */
+    public static byte[] encode(byte[] base, byte[] result) {
+        if (base.length < BLOCK || result.length < BLOCK) {
+            return null;
+        }
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, result.length);
+        int pending = 0;
+        int pos = 0;
+        int h = hash(result, 0);
+        while (pos + BLOCK <= result.length) {
+            Integer candidate = blocks.get(h);
+            if (candidate != null && same(base, candidate, result, pos)) {
+                int start = candidate;
+                int length = BLOCK;
+                while (start + length < base.length
+                        && pos + length < result.length
+                        && base[start + length] == result[pos + length]) {
+                    length += 1;
+                }
+                while (start > 0 && pos > pending
+                        && base[start - 1] == result[pos - 1]) {
+                    start -= 1;
+                    pos -= 1;
+                    length += 1;
+                }
+                insert(out, result, pending, pos);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, length);
+                pos += length;
+                pending = pos;
+                if (pos + BLOCK <= result.length) {
+                    h = hash(result, pos);
+                }
+                continue;
+            }
+            if (pos + BLOCK < result.length) {
+                h = roll(h, result[pos], result[pos + BLOCK]);
+            }
+            pos += 1;
+        }
+        insert(out, result, pending, result.length);
+        byte[] delta = out.toByteArray();
+        return delta.length * 2 > result.length ? null : delta;
+    }
+
+    /** Apply a delta to its base.
+     * @param base the base.
+     * @param delta the delta.
+     * @return the result. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not fit its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int done = 0;
+        while (pos[0] < delta.length) {
+            byte op = delta[pos[0]++];
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, done, length);
+                done += length;
+            } else if (op == INSERT) {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, done, length);
+                pos[0] += length;
+                done += length;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (done != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Get the length of the result of a delta without applying it.
+     * @param delta the delta, or at least its first bytes.
+     * @return the length of the result. */
+    public static int resultLength(byte[] delta) {
+        int[] pos = {0};
+        readVarint(delta, pos);
+        return readVarint(delta, pos);
+    }
+
+    /** Write the bytes of the result between two offsets as an INSERT.
+     * @param out the delta being written.
+     * @param result the result.
+     * @param from the first byte.
+     * @param to the byte past the last. */
+    private static void insert(ByteArrayOutputStream out, byte[] result,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(result, from, to - from);
+        }
+    }
+
+    /** Whether a block of the base and of the result hold the same bytes.
+     * @param base the base.
+     * @param b the offset of the block in the base.
+     * @param result the result.
+     * @param r the offset of the block in the result.
+     * @return true if they do. */
+    private static boolean same(byte[] base, int b, byte[] result, int r) {
+        for (int i = 0; i < BLOCK; i += 1) {
+            if (base[b + i] != result[r + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Hash the block at an offset.
+     * @param data the bytes.
+     * @param off the offset of the block.
+     * @return the hash. */
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i += 1) {
+            h = h * PRIME + (data[off + i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Move the hash of a block one byte forward.
+     * @param h the hash of the block.
+     * @param out the byte leaving the block.
+     * @param in the byte entering the block.
+     * @return the hash of the next block. */
+    private static int roll(int h, byte out, byte in) {
+        return (h - (out & 0xff) * POWER) * PRIME + (in & 0xff);
+    }
+
+    /** Write an unsigned varint.
+     * @param out the stream.
+     * @param value the number. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Read an unsigned varint.
+     * @param data the bytes.
+     * @param pos the offset to read at, moved past the number.
+     * @return the number. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = data[pos[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /** Width of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME to the power BLOCK - 1. */
+    private static final int POWER;
+
+    static {
+        int p = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            p *= PRIME;
+        }
+        POWER = p;
+    }
+
+    /** Instruction copying a range of the base. */
+    private static final byte COPY = 1;
+
+    /** Instruction inserting literal bytes. */
+    private static final byte INSERT = 2;
+
+}
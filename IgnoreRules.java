@@ -0,0 +1,211 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** IgnoreRules class for Gitlet, a class that decides which working
+ *  files are left out of scans, compiled once from .gitletignore.
+ *  Each line of the file is a pattern; blank lines and lines starting
+ *  with # are skipped.  A pattern ending with "/" only matches
+ *  directories.  A pattern with no other "/" matches a file or directory
+ *  name at any depth; otherwise it matches a path from the top of the
+ *  working directory, and a leading "/" is dropped.  "*" and "?" match
+ *  within a name, "[...]" matches a set of characters, and "**" matches
+ *  any number of directories.
+ *  Names without wildcards are looked up in a set, paths without
+ *  wildcards in a trie of path components, and only the remaining
+ *  patterns are tried as regular expressions.  A matching directory is
+ *  never entered, so nothing below it is read.
+ *  @author Minh Nguyen
+ */
+public class IgnoreRules {
+
+    /** Load the rules of a working directory.
+     * @param cwd the working directory. */
+    public IgnoreRules(String cwd) {
+        File file = Utils.join(cwd, ".gitletignore");
+        if (!file.isFile()) {
+            return;
+        }
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            add(line.strip());
+        }
+    }
+
+    /** Whether there are no rules.
+     * @return true if nothing is ignored. */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /** Whether a path is ignored.  Its parent directories are assumed
+     * not to be, as they are never entered when they are.
+     * @param path the path, with "/" between directories.
+     * @param directory whether it is a directory.
+     * @return true if it is ignored. */
+    public boolean ignored(String path, boolean directory) {
+        if (empty) {
+            return false;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (names.contains(name) || directory && dirNames.contains(name)) {
+            return true;
+        }
+        Node node = paths;
+        for (String part : path.split("/")) {
+            node = node.children.get(part);
+            if (node == null) {
+                break;
+            }
+            if (node.file || directory && node.dir) {
+                return true;
+            }
+        }
+        return matches(nameGlobs, name, directory)
+                || matches(pathGlobs, path, directory);
+    }
+
+    /** Compile one line of .gitletignore.
+     * @param line the line. */
+    private void add(String line) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        boolean dirOnly = line.endsWith("/");
+        String pattern = dirOnly ? line.substring(0, line.length() - 1)
+                : line;
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        empty = false;
+        if (isGlob(pattern)) {
+            Rule rule = new Rule(glob(pattern), dirOnly);
+            (anchored ? pathGlobs : nameGlobs).add(rule);
+        } else if (anchored) {
+            Node node = paths;
+            for (String part : pattern.split("/")) {
+                node = node.children.computeIfAbsent(part, k -> new Node());
+            }
+            if (dirOnly) {
+                node.dir = true;
+            } else {
+                node.file = true;
+            }
+        } else {
+            (dirOnly ? dirNames : names).add(pattern);
+        }
+    }
+
+    /** Whether one of the glob rules matches.
+     * @param rules the rules.
+     * @param s the name or path.
+     * @param directory whether it is a directory.
+     * @return true if one matches. */
+    private static boolean matches(List<Rule> rules, String s,
+                                   boolean directory) {
+        for (Rule rule : rules) {
+            if ((directory || !rule.dirOnly)
+                    && rule.pattern.matcher(s).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether a pattern has wildcards.
+     * @param pattern the pattern.
+     * @return true if it has "*", "?" or "[". */
+    static boolean isGlob(String pattern) {
+        return pattern.chars().anyMatch(c -> "*?[".indexOf(c) >= 0);
+    }
+
+    /** Compile a glob to a regular expression matching paths.
+     * @param glob the glob.
+     * @return the pattern. */
+    static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i += 1) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                int close = glob.indexOf(']', i + 1);
+                String set = glob.substring(i + 1, close);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\"))
+                        .append(']');
+                i = close;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /** A glob pattern. */
+    private static class Rule {
+
+        /** A rule for PATTERN, matching only directories if DIRONLY.
+         * @param pattern the compiled glob.
+         * @param dirOnly whether it only matches directories. */
+        Rule(Pattern pattern, boolean dirOnly) {
+            this.pattern = pattern;
+            this.dirOnly = dirOnly;
+        }
+
+        /** The compiled glob. */
+        private final Pattern pattern;
+
+        /** Whether it only matches directories. */
+        private final boolean dirOnly;
+    }
+
+    /** A node of the trie of literal paths. */
+    private static class Node {
+
+        /** The nodes below, by path component. */
+        private final HashMap<String, Node> children = new HashMap<>();
+
+        /** Whether the path to this node is ignored. */
+        private boolean file;
+
+        /** Whether the path to this node is ignored if it is a directory. */
+        private boolean dir;
+    }
+
+    /** Whether there are no rules. */
+    private boolean empty = true;
+
+    /** Names ignored at any depth. */
+    private HashSet<String> names = new HashSet<>();
+
+    /** Names of directories ignored at any depth. */
+    private HashSet<String> dirNames = new HashSet<>();
+
+    /** The trie of paths ignored from the top of the working directory. */
+    private Node paths = new Node();
+
+    /** Globs matched against names. */
+    private List<Rule> nameGlobs = new ArrayList<>();
+
+    /** Globs matched against paths. */
+    private List<Rule> pathGlobs = new ArrayList<>();
+
+}
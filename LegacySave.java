@@ -0,0 +1,104 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/** LegacySave class for Gitlet, a class that reads .gitlet/saves, the
+ *  serialized Commands in which older repositories kept their branches,
+ *  head and stage.
+ *  Commands is no longer serializable, so the stream is read with this
+ *  class standing in for it: it declares the fields the old Commands
+ *  had and pins the serialVersionUID that class was computed to have.
+ *  @author Minh Nguyen
+ */
+class LegacySave implements Serializable {
+
+    /** Read a saves file.
+     * @param file the file.
+     * @return what it holds. */
+    static LegacySave read(File file) {
+        try (ObjectInputStream in = new ObjectInputStream
+                (new BufferedInputStream(Files.newInputStream
+                        (file.toPath()))) {
+            @Override
+            protected ObjectStreamClass readClassDescriptor()
+                    throws IOException, ClassNotFoundException {
+                ObjectStreamClass desc = super.readClassDescriptor();
+                if (!desc.getName().equals(COMMANDS)) {
+                    return desc;
+                }
+                if (desc.getSerialVersionUID() != serialVersionUID) {
+                    throw new InvalidClassException(COMMANDS,
+                            "unknown version of the saves file");
+                }
+                return ObjectStreamClass.lookup(LegacySave.class);
+            }
+        }) {
+            return (LegacySave) in.readObject();
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            throw Utils.error("Unsupported repository format: "
+                    + "cannot read .gitlet/saves.");
+        }
+    }
+
+    /** Get the branches.
+     * @return the head commit of each branch, by name. */
+    TreeMap<String, String> getBranches() {
+        return branches;
+    }
+
+    /** Get the head branch.
+     * @return its name. */
+    String getHeadBranch() {
+        return headBranch;
+    }
+
+    /** Get the stage.
+     * @return the stage. */
+    Staging getStage() {
+        return stage;
+    }
+
+    /** Get every commit made.
+     * @return their hashIds, in the order they were made. */
+    ArrayList<String> getCommitList() {
+        return commitList;
+    }
+
+    /** The name of the class the saves file was written as. */
+    private static final String COMMANDS = "gitlet.Commands";
+
+    /** The serialVersionUID of Commands when it was serialized. */
+    private static final long serialVersionUID = 4664496795559893330L;
+
+    /** The working directory the repository was saved from. */
+    private String cwd;
+
+    /** The head commit of each branch, by name. */
+    private TreeMap<String, String> branches;
+
+    /** Where the branches intersected, unused since. */
+    private HashMap<String, String> intersection;
+
+    /** The hash of the head commit. */
+    private String headCommit;
+
+    /** The name of the head branch. */
+    private String headBranch;
+
+    /** The stage. */
+    private Staging stage;
+
+    /** Every commit made, in order. */
+    private ArrayList<String> commitList;
+
+}
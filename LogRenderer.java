@@ -0,0 +1,201 @@
+package gitlet;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.function.IntFunction;
+
+/** LogRenderer class for Gitlet, a class that prints the commits shown
+ *  by log and global-log.
+ *  Everything is read from the commit graph and the message index, so
+ *  no commit is deserialized, and the output goes through one large
+ *  buffer that is flushed at the end.  Dates are printed as they were
+ *  written at commit time, whatever the current time zone and locale.
+ *  The options -n [count], --since [yyyy-MM-dd], --until [yyyy-MM-dd]
+ *  and --oneline limit and shorten the output; commits are walked
+ *  newest first in log and oldest first in global-log, so the walk
+ *  stops as soon as the count is reached or the dates are past the
+ *  range, having read the index records of those commits only.
+ *  @author Minh Nguyen
+ */
+public class LogRenderer {
+
+    /** A renderer for the given options.
+     * @param commitGraph the commit graph.
+     * @param messageOf gives the message of the commit at a position.
+     * @param dateOf gives the date of the commit at a position.
+     * @param args the arguments of the command, options from args[1]. */
+    public LogRenderer(CommitGraph commitGraph, IntFunction<String> messageOf,
+                       IntFunction<String> dateOf, String[] args) {
+        graph = commitGraph;
+        messages = messageOf;
+        dates = dateOf;
+        for (int i = 1; i < args.length; i += 1) {
+            String option = args[i];
+            if (option.equals("--oneline")) {
+                oneline = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[i += 1];
+            switch (option) {
+            case "-n" -> limit = count(value);
+            case "--since" -> since = day(value).toEpochMilli();
+            case "--until" -> until = day(value).toEpochMilli() + DAY - 1;
+            default -> usage();
+            }
+        }
+    }
+
+    /** Print the first-parent history of a commit, newest first.
+     * @param head the position of the commit. */
+    public void log(int head) {
+        for (int pos = head; pos >= 0 && shown < limit;
+             pos = graph.parent1(pos)) {
+            long time = graph.timestamp(pos);
+            if (time < since) {
+                break;
+            }
+            if (time <= until) {
+                print(pos);
+            }
+        }
+        flush();
+    }
+
+    /** Print every commit, oldest first. */
+    public void globalLog() {
+        for (int pos = 0; pos < graph.size() && shown < limit; pos += 1) {
+            long time = graph.timestamp(pos);
+            if (time > until) {
+                break;
+            }
+            if (time >= since) {
+                print(pos);
+            }
+        }
+        flush();
+    }
+
+    /** Print one commit.
+     * @param pos its position. */
+    private void print(int pos) {
+        String id = graph.id(pos);
+        try {
+            if (oneline) {
+                out.write(id, 0, SHORT_ID);
+                out.write(' ');
+                out.write(messages.apply(pos));
+                out.newLine();
+            } else {
+                out.write("===");
+                out.newLine();
+                out.write("commit ");
+                out.write(id);
+                out.newLine();
+                if (graph.parent2(pos) >= 0) {
+                    out.write("Merge: ");
+                    out.write(graph.id(graph.parent1(pos)), 0, SHORT_ID);
+                    out.write(' ');
+                    out.write(graph.id(graph.parent2(pos)), 0, SHORT_ID);
+                    out.newLine();
+                }
+                out.write("Date: ");
+                out.write(dates.apply(pos));
+                out.newLine();
+                out.write(messages.apply(pos));
+                out.newLine();
+                out.newLine();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write log.");
+        }
+        shown += 1;
+    }
+
+    /** Flush the buffered output. */
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write log.");
+        }
+    }
+
+    /** Parse the count of -n.
+     * @param value the count.
+     * @return the count. */
+    private static int count(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            usage();
+        }
+        usage();
+        return 0;
+    }
+
+    /** Parse a date of --since or --until.
+     * @param value the date, yyyy-MM-dd.
+     * @return the start of that day in the local time zone. */
+    private static Instant day(String value) {
+        try {
+            return LocalDate.parse(value)
+                    .atStartOfDay(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException excp) {
+            usage();
+            return null;
+        }
+    }
+
+    /** Report badly formed options and exit. */
+    private static void usage() {
+        throw Utils.error("Incorrect Operands");
+    }
+
+    /** Length of the abbreviated hashIds. */
+    private static final int SHORT_ID = 7;
+
+    /** Milliseconds in a day. */
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER = 1 << 16;
+
+    /** The commit graph. */
+    private CommitGraph graph;
+
+    /** Gives the message of the commit at a position. */
+    private IntFunction<String> messages;
+
+    /** Gives the date of the commit at a position. */
+    private IntFunction<String> dates;
+
+    /** Where the log is written. */
+    private BufferedWriter out = new BufferedWriter
+            (new OutputStreamWriter(System.out), BUFFER);
+
+    /** The most commits to print. */
+    private int limit = Integer.MAX_VALUE;
+
+    /** The earliest time of a commit to print. */
+    private long since = Long.MIN_VALUE;
+
+    /** The latest time of a commit to print. */
+    private long until = Long.MAX_VALUE;
+
+    /** Whether to print one line per commit. */
+    private boolean oneline;
+
+    /** The number of commits printed so far. */
+    private int shown;
+
+}
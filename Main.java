@@ -1,5 +1,6 @@
 package gitlet;
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * Driver class for Gitlet, the tiny stupid version-control system.
@@ -11,12 +12,61 @@ public class Main {
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
      * <COMMAND> <OPERAND> ....
+     * --trace before the command, or GITLET_TRACE=1, prints where the
+     * time went. When a daemon serves the repository, the command is
+     * run by it instead.
      */
     public static void main(String... args) {
-        Commands command = new Commands();
+        boolean trace = Trace.requested();
+        if (args.length > 0 && args[0].equals("--trace")) {
+            trace = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int status = Client.forward(args, trace);
+        if (status >= 0) {
+            System.out.flush();
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+        Trace.setEnabled(trace);
+        run(args, null);
+    }
+
+    /**
+     * Runs one command in this process. A GitletException ends the
+     * command with its message, as every user error does.
+     *
+     * @param args the command and its operands
+     * @param warm the Commands of the previous command, whose caches
+     *             are reused, or null to read everything from disk
+     * @return the Commands that ran the command, or null if the
+     *         repository could not be opened
+     */
+    public static Commands run(String[] args, Commands warm) {
+        Trace.start(args);
+        Commands command = null;
+        try {
+            command = warm == null ? new Commands() : new Commands(warm);
+            dispatch(command, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            Trace.finish();
+        }
+        return command;
+    }
+
+    /**
+     * Runs the command named by args[0].
+     *
+     * @param command the Commands object
+     * @param args the command and its operands
+     */
+    private static void dispatch(Commands command, String[] args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
         }
         switch (args[0]) {
         case "init" -> validateNumArgs(command, args, 1);
@@ -24,18 +74,47 @@ public class Main {
             initChecker();
             command.checkout(args);
         }
-        case "global-log", "status", "log" -> {
+        case "add", "rm" -> {
+            initChecker();
+            if (args.length < 2) {
+                throw Utils.error("Incorrect Operands");
+            }
+            if (args[0].equals("add")) {
+                command.add(args);
+            } else {
+                command.rm(args);
+            }
+        }
+        case "find" -> {
+            initChecker();
+            command.find(args);
+        }
+        case "config" -> {
+            initChecker();
+            command.config(args);
+        }
+        case "log" -> {
+            initChecker();
+            command.log(args);
+        }
+        case "global-log" -> {
+            initChecker();
+            command.globalLog(args);
+        }
+        case "daemon" -> {
+            initChecker();
+            Daemon.start(command, args);
+        }
+        case "status", "repack", "gc", "prune" -> {
             initChecker();
             validateNumArgs(command, args, 1);
         }
-        case "commit", "add", "find", "branch",
-                "rm", "rm-branch", "reset", "merge" -> {
+        case "commit", "branch", "rm-branch", "reset", "merge" -> {
             initChecker();
             validateNumArgs(command, args, 2);
         }
         default -> {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw Utils.error("No command with that name exists.");
         }
         }
     }
@@ -49,25 +128,21 @@ public class Main {
      */
     public static void validateNumArgs(Commands command, String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect Operands");
-            System.exit(0);
+            throw Utils.error("Incorrect Operands");
         }
         switch (args[0]) {
         case "init" -> command.init();
-        case "add" -> command.add(args[1]);
         case "commit" -> command.commit(args[1]);
-        case "log" -> command.log();
-        case "rm" -> command.rm(args[1]);
-        case "global-log" -> command.globalLog();
         case "status" -> command.status();
-        case "find" -> command.find(args[1]);
         case "branch" -> command.branch(args[1]);
         case "rm-branch" -> command.rmBranch(args[1]);
         case "reset" -> command.reset(args[1]);
         case "merge" -> command.merge(args[1]);
+        case "repack" -> command.repack();
+        case "gc" -> command.gc();
+        case "prune" -> command.prune();
         default -> {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw Utils.error("No command with that name exists.");
         }
         }
     }
@@ -79,8 +154,7 @@ public class Main {
         File gitletDirectory = Utils.join
                 (System.getProperty("user.dir"), ".gitlet");
         if (!gitletDirectory.exists()) {
-            System.out.println("Not in an initialized gitlet directory.");
-            System.exit(0);
+            throw Utils.error("Not in an initialized gitlet directory.");
         }
     }
 }
@@ -0,0 +1,183 @@
+package gitlet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** MergeBase class for Gitlet, a class that finds the split point of
+ *  two commits on the commit graph.
+ *  Both sides are walked at once, newest generation first, painting each
+ *  commit with the side it was reached from.  A commit reached from both
+ *  sides is a merge base, and everything below it is marked stale; the
+ *  walk stops as soon as only stale commits are left.  The work is
+ *  therefore proportional to how far the two sides diverged, not to the
+ *  length of the history.
+ *  @author Minh Nguyen
+ */
+public class MergeBase {
+
+    /** Create the finder for a commit graph.
+     * @param commitGraph the commit graph. */
+    public MergeBase(CommitGraph commitGraph) {
+        graph = commitGraph;
+    }
+
+    /** Find the best common ancestor of two commits.  After a criss-cross
+     * merge there can be several, none an ancestor of another; the one
+     * with the highest generation, then the newest, is chosen.
+     * @param a the position of one commit.
+     * @param b the position of the other.
+     * @return the position of the split point, or -1 if there is none. */
+    public int best(int a, int b) {
+        int result = -1;
+        for (int base : all(a, b)) {
+            if (result < 0 || graph.generation(base) > graph.generation(result)
+                    || (graph.generation(base) == graph.generation(result)
+                    && graph.timestamp(base) > graph.timestamp(result))) {
+                result = base;
+            }
+        }
+        return result;
+    }
+
+    /** Find every best common ancestor of two commits: the common
+     * ancestors that are not ancestors of another common ancestor.
+     * @param a the position of one commit.
+     * @param b the position of the other.
+     * @return the positions of the merge bases. */
+    public List<Integer> all(int a, int b) {
+        List<Integer> candidates = paintDownToCommon(a, b);
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        List<Integer> result = new ArrayList<>();
+        for (int candidate : candidates) {
+            if (!reachableFromOthers(candidate, candidates)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    /** Walk down from both commits at once and collect the commits that
+     * are reached from both sides before becoming stale.
+     * @param a the position of one commit.
+     * @param b the position of the other.
+     * @return the candidate merge bases. */
+    private List<Integer> paintDownToCommon(int a, int b) {
+        List<Integer> result = new ArrayList<>();
+        if (a < 0 || b < 0) {
+            return result;
+        }
+        if (a == b) {
+            result.add(a);
+            return result;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(graph.generation(y),
+                    graph.generation(x));
+            if (cmp == 0) {
+                cmp = Long.compare(graph.timestamp(y), graph.timestamp(x));
+            }
+            return cmp;
+        });
+        flags.put(a, PARENT1);
+        flags.put(b, PARENT2);
+        queue.add(a);
+        queue.add(b);
+        while (hasNonStale(queue, flags)) {
+            int commit = queue.poll();
+            int paint = flags.get(commit) & (PARENT1 | PARENT2 | STALE);
+            if (paint == (PARENT1 | PARENT2)) {
+                if ((flags.get(commit) & RESULT) == 0) {
+                    flags.put(commit, flags.get(commit) | RESULT);
+                    result.add(commit);
+                }
+                paint |= STALE;
+            }
+            for (int parent : new int[] {graph.parent1(commit),
+                                         graph.parent2(commit)}) {
+                if (parent < 0) {
+                    continue;
+                }
+                int old = flags.getOrDefault(parent, 0);
+                if ((old & paint) == paint) {
+                    continue;
+                }
+                flags.put(parent, old | paint);
+                queue.add(parent);
+            }
+        }
+        List<Integer> live = new ArrayList<>();
+        for (int commit : result) {
+            if ((flags.get(commit) & STALE) == 0) {
+                live.add(commit);
+            }
+        }
+        return live;
+    }
+
+    /** Whether any commit left in the queue is not yet stale.
+     * @param queue the commits still to visit.
+     * @param flags the paint of each visited commit.
+     * @return true if the walk must go on. */
+    private static boolean hasNonStale(PriorityQueue<Integer> queue,
+                                       HashMap<Integer, Integer> flags) {
+        for (int commit : queue) {
+            if ((flags.get(commit) & STALE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether a candidate is an ancestor of one of the other candidates.
+     * The walk stops below the candidate's generation, since nothing
+     * there can lead back up to it.
+     * @param candidate the position of the candidate.
+     * @param candidates all the candidates.
+     * @return true if the candidate is redundant. */
+    private boolean reachableFromOthers(int candidate,
+                                        List<Integer> candidates) {
+        int floor = graph.generation(candidate);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        HashSet<Integer> seen = new HashSet<>();
+        for (int other : candidates) {
+            if (other != candidate) {
+                queue.add(other);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int commit = queue.remove();
+            if (commit == candidate) {
+                return true;
+            }
+            if (commit < 0 || graph.generation(commit) <= floor
+                    || !seen.add(commit)) {
+                continue;
+            }
+            queue.add(graph.parent1(commit));
+            queue.add(graph.parent2(commit));
+        }
+        return false;
+    }
+
+    /** Paint of commits reached from the first commit. */
+    private static final int PARENT1 = 1;
+
+    /** Paint of commits reached from the second commit. */
+    private static final int PARENT2 = 2;
+
+    /** Paint of commits below a merge base. */
+    private static final int STALE = 4;
+
+    /** Mark of commits already collected as a candidate. */
+    private static final int RESULT = 8;
+
+    /** The commit graph. */
+    private CommitGraph graph;
+
+}
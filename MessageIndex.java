@@ -0,0 +1,577 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/** MessageIndex class for Gitlet, a class that keeps the message and
+ *  the date of every commit in .gitlet/messages, and an inverted index
+ *  of them in .gitlet/message-index, so that find and log never need to
+ *  deserialize a commit, nor read the messages of other commits.
+ *  messages is "GMSG", a version number, then one record per commit in
+ *  the order they were made: the binary hashId, then the date as it was
+ *  written at commit time and the message, each as a length and UTF-8
+ *  bytes.  commit and merge append a record.
+ *  message-index is "GMIX", a version number, the number of records it
+ *  covers and where they end in messages, then three arrays: the offset
+ *  of each record, and two sorted arrays of postings, each a hash in
+ *  the high four bytes and a position in the low four.  The first holds
+ *  the hash of each message, the second the hash of every three
+ *  characters in a row of each message.  An exact message is found with
+ *  a binary search for its hash; a text is searched for in the commits
+ *  that have the postings of all its runs of three characters, and a
+ *  text shorter than that in every message.  Like the commit index, it
+ *  covers the first records only; those appended since are kept in
+ *  memory, and once there are more than a few hundred of them the index
+ *  is rebuilt.
+ *  @author Minh Nguyen
+ */
+public class MessageIndex {
+
+    /** The message index of the given .gitlet directory.  It is only read
+     * when it is first used, so appending to it stays cheap.
+     * @param gitletDir the .gitlet directory. */
+    public MessageIndex(File gitletDir) {
+        file = Utils.join(gitletDir, "messages");
+        indexFile = Utils.join(gitletDir, "message-index");
+    }
+
+    /** Whether the messages file exists in the current format.  A file in
+     * an older format, without dates, is deleted so that it is built
+     * again, and so is the index of a missing file.
+     * @return true if it does. */
+    public boolean exists() {
+        boolean current = false;
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream
+                    (new FileInputStream(file))) {
+                current = in.readInt() == MAGIC && in.readInt() == VERSION;
+            } catch (IOException excp) {
+                current = false;
+            }
+        }
+        if (!current) {
+            file.delete();
+            indexFile.delete();
+        }
+        return current;
+    }
+
+    /** Get the number of commits in the index.
+     * @return the number of commits. */
+    public int size() {
+        load();
+        return count + tail.size();
+    }
+
+    /** Get the hashId of a commit.
+     * @param pos the position of the commit, in the order they were made.
+     * @return its hashId. */
+    public String id(int pos) {
+        return record(pos).id;
+    }
+
+    /** Get the message of a commit.
+     * @param pos the position of the commit, in the order they were made.
+     * @return its message. */
+    public String message(int pos) {
+        return record(pos).message;
+    }
+
+    /** Get the date of a commit.
+     * @param pos the position of the commit, in the order they were made.
+     * @return its date, as it was written at commit time. */
+    public String time(int pos) {
+        return record(pos).time;
+    }
+
+    /** Append a commit to the index.
+     * @param commit the commit. */
+    public void add(Commits commit) {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(file, true))) {
+            if (file.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            write(out, commit.getHashId(), commit.getTime(),
+                    commit.getMessage());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write messages.");
+        }
+        if (tail != null) {
+            tail.add(new Record(commit.getHashId(), commit.getTime(),
+                    commit.getMessage(), 0));
+        }
+    }
+
+    /** Rewrite the index with only the given commits.
+     * @param keep the hashIds of the commits to keep. */
+    public void retain(Set<String> keep) {
+        load();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < size(); i += 1) {
+                Record record = record(i);
+                if (keep.contains(record.id)) {
+                    write(out, record.id, record.time, record.message);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing messages.");
+        }
+        replace(file, bytes.toByteArray(), "messages");
+        rebuild();
+    }
+
+    /** Find the commits with exactly the given message.
+     * @param message the message.
+     * @return their hashIds, in the order they were made. */
+    public List<String> find(String message) {
+        load();
+        List<String> result = new ArrayList<>();
+        for (int pos : postings(messageStart, count,
+                message.hashCode())) {
+            Record record = record(pos);
+            if (record.message.equals(message)) {
+                result.add(record.id);
+            }
+        }
+        for (Record record : tail) {
+            if (record.message.equals(message)) {
+                result.add(record.id);
+            }
+        }
+        return result;
+    }
+
+    /** Find the commits whose message contains the given text.
+     * @param text the text.
+     * @return their hashIds, in the order they were made. */
+    public List<String> grep(String text) {
+        load();
+        List<String> result = new ArrayList<>();
+        if (text.length() < GRAM) {
+            for (int pos = 0; pos < count; pos += 1) {
+                Record record = record(pos);
+                if (record.message.contains(text)) {
+                    result.add(record.id);
+                }
+            }
+        } else {
+            for (int pos : candidates(text)) {
+                Record record = record(pos);
+                if (record.message.contains(text)) {
+                    result.add(record.id);
+                }
+            }
+        }
+        for (Record record : tail) {
+            if (record.message.contains(text)) {
+                result.add(record.id);
+            }
+        }
+        return result;
+    }
+
+    /** Rewrite message-index so that it covers every record in
+     * messages. */
+    public void rebuild() {
+        mapMessages();
+        List<Record> records = new ArrayList<>();
+        int offset = HEADER;
+        for (Record record = read(offset); record != null;
+             record = read(offset)) {
+            records.add(record);
+            offset = record.end;
+        }
+        int size = records.size();
+        long[] keys = new long[size];
+        long[] grams = new long[size];
+        int gramCount = 0;
+        for (int pos = 0; pos < size; pos += 1) {
+            String message = records.get(pos).message;
+            keys[pos] = posting(message.hashCode(), pos);
+            for (int i = 0; i + GRAM <= message.length(); i += 1) {
+                if (gramCount == grams.length) {
+                    grams = Arrays.copyOf(grams, 2 * gramCount + 1);
+                }
+                grams[gramCount] = posting(gram(message, i), pos);
+                gramCount += 1;
+            }
+        }
+        Arrays.sort(keys);
+        Arrays.sort(grams, 0, gramCount);
+        int distinct = 0;
+        for (int i = 0; i < gramCount; i += 1) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct] = grams[i];
+                distinct += 1;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(INDEX_HEADER
+                + (2 * size + distinct) * Long.BYTES);
+        out.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(size)
+                .putInt(distinct).putLong(offset);
+        for (Record record : records) {
+            out.putLong(record.offset);
+        }
+        for (long key : keys) {
+            out.putLong(key);
+        }
+        for (int i = 0; i < distinct; i += 1) {
+            out.putLong(grams[i]);
+        }
+        replace(indexFile, out.array(), "message-index");
+        load(true);
+    }
+
+    /** Read the index, unless it was already read. */
+    private void load() {
+        if (tail == null) {
+            load(false);
+        }
+    }
+
+    /** Map messages and message-index, keep in memory the records the
+     * index does not cover, and rebuild the index if there are too many
+     * of them.
+     * @param built whether the index was just rebuilt. */
+    private void load(boolean built) {
+        mapMessages();
+        index = null;
+        count = 0;
+        grams = 0;
+        int end = HEADER;
+        if (indexFile.isFile()) {
+            try (FileChannel in = FileChannel.open(indexFile.toPath(),
+                    StandardOpenOption.READ)) {
+                ByteBuffer mapped =
+                        in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                if (mapped.getInt(0) != INDEX_MAGIC
+                        || mapped.getInt(4) != INDEX_VERSION) {
+                    throw Utils.error("Unknown format of message-index.");
+                }
+                if (mapped.getLong(16) <= messages.limit()) {
+                    index = mapped;
+                    count = mapped.getInt(8);
+                    grams = mapped.getInt(12);
+                    end = (int) mapped.getLong(16);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read message-index.");
+            }
+        }
+        messageStart = INDEX_HEADER + count * Long.BYTES;
+        gramStart = messageStart + count * Long.BYTES;
+        tail = new ArrayList<>();
+        last = null;
+        for (Record record = read(end); record != null;
+             record = read(record.end)) {
+            tail.add(record);
+        }
+        if (!built && tail.size() > REBUILD_THRESHOLD) {
+            rebuild();
+        }
+    }
+
+    /** Map the messages file as it is now. */
+    private void mapMessages() {
+        messages = ByteBuffer.allocate(0);
+        if (!file.isFile()) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            messages = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read messages.");
+        }
+        if (messages.limit() > 0 && (messages.limit() < HEADER
+                || messages.getInt(0) != MAGIC
+                || messages.getInt(4) != VERSION)) {
+            throw Utils.error("Unknown format of messages.");
+        }
+    }
+
+    /** Get the record of a commit, reading only that record.
+     * @param pos the position of the commit.
+     * @return its record. */
+    private Record record(int pos) {
+        load();
+        if (pos >= count) {
+            return tail.get(pos - count);
+        }
+        if (last == null || last.pos != pos) {
+            last = read((int) index.getLong(INDEX_HEADER + pos * Long.BYTES));
+            last.pos = pos;
+        }
+        return last;
+    }
+
+    /** Get the positions of the postings with a hash.
+     * @param start where the sorted postings start in the index.
+     * @param size the number of postings.
+     * @param hash the hash.
+     * @return the positions, in increasing order. */
+    private List<Integer> postings(int start, int size, int hash) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = lowerBound(start, size, posting(hash, 0)); i < size;
+             i += 1) {
+            long key = index.getLong(start + i * Long.BYTES);
+            if ((int) (key >>> 32) != hash) {
+                break;
+            }
+            result.add((int) key);
+        }
+        return result;
+    }
+
+    /** Get the covered commits whose messages have every run of three
+     * characters in a text.  The postings of the rarest run are read,
+     * and each of them looked up among those of the other runs.
+     * @param text the text, at least GRAM characters long.
+     * @return their positions, in increasing order. */
+    private List<Integer> candidates(String text) {
+        int[] hashes = new int[text.length() - GRAM + 1];
+        for (int i = 0; i < hashes.length; i += 1) {
+            hashes[i] = gram(text, i);
+        }
+        int rarest = 0;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < hashes.length; i += 1) {
+            int n = lowerBound(gramStart, grams,
+                    posting(hashes[i], Integer.MAX_VALUE))
+                    - lowerBound(gramStart, grams, posting(hashes[i], 0));
+            if (n < fewest) {
+                fewest = n;
+                rarest = i;
+            }
+        }
+        List<Integer> result = new ArrayList<>();
+        for (int pos : postings(gramStart, grams, hashes[rarest])) {
+            boolean all = true;
+            for (int i = 0; i < hashes.length && all; i += 1) {
+                long key = posting(hashes[i], pos);
+                int at = lowerBound(gramStart, grams, key);
+                all = at < grams
+                        && index.getLong(gramStart + at * Long.BYTES) == key;
+            }
+            if (all) {
+                result.add(pos);
+            }
+        }
+        return result;
+    }
+
+    /** Find the first of some sorted postings not less than a key.
+     * @param start where the postings start in the index.
+     * @param size the number of postings.
+     * @param key the key.
+     * @return its index among the postings. */
+    private int lowerBound(int start, int size, long key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getLong(start + mid * Long.BYTES) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Read the record at an offset of the messages file.
+     * @param offset the offset.
+     * @return the record, or null if the file ends first. */
+    private Record read(int offset) {
+        if (messages.limit() - offset < Utils.UID_BYTES) {
+            return null;
+        }
+        byte[] uid = new byte[Utils.UID_BYTES];
+        messages.get(offset, uid);
+        int[] at = {offset + Utils.UID_BYTES};
+        String time = readString(at);
+        String message = time == null ? null : readString(at);
+        if (message == null) {
+            return null;
+        }
+        Record record = new Record(Utils.bytesToUid(uid, 0), time, message,
+                offset);
+        record.end = at[0];
+        return record;
+    }
+
+    /** Read a length and that many bytes of UTF-8 from messages.
+     * @param at the offset of the length, moved past the bytes.
+     * @return the String, or null if the file ends first. */
+    private String readString(int[] at) {
+        if (messages.limit() - at[0] < Integer.BYTES) {
+            return null;
+        }
+        int length = messages.getInt(at[0]);
+        if (length < 0 || length > messages.limit() - at[0] - Integer.BYTES) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        messages.get(at[0] + Integer.BYTES, utf8);
+        at[0] += Integer.BYTES + length;
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /** Write the record of a commit.
+     * @param out the stream.
+     * @param id the hashId of the commit.
+     * @param time its date.
+     * @param message its message. */
+    private static void write(DataOutputStream out, String id, String time,
+                              String message) throws IOException {
+        out.write(Utils.uidToBytes(id));
+        for (String s : new String[] {time, message}) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    /** Replace a file through a temporary file.
+     * @param target the file.
+     * @param bytes its new contents.
+     * @param name its name, for errors. */
+    private static void replace(File target, byte[] bytes, String name) {
+        File tmp = new File(target.getPath() + ".tmp");
+        Utils.writeContents(tmp, bytes);
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", name);
+        }
+    }
+
+    /** Make a posting.
+     * @param hash its hash.
+     * @param pos its position.
+     * @return the posting, ordered by hash, then by position. */
+    private static long posting(int hash, int pos) {
+        return (long) hash << 32 | pos;
+    }
+
+    /** Hash the run of three characters at an index of a String.
+     * @param s the String.
+     * @param i the index.
+     * @return the hash. */
+    private static int gram(String s, int i) {
+        long packed = (long) s.charAt(i) << 32
+                | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+        return (int) ((packed * 0x9e3779b97f4a7c15L) >>> 32);
+    }
+
+    /** The record of a commit. */
+    private static class Record {
+
+        /** A record.
+         * @param id the hashId of the commit.
+         * @param time its date.
+         * @param message its message.
+         * @param offset where the record starts in messages. */
+        Record(String id, String time, String message, int offset) {
+            this.id = id;
+            this.time = time;
+            this.message = message;
+            this.offset = offset;
+        }
+
+        /** The hashId of the commit. */
+        private final String id;
+
+        /** Its date. */
+        private final String time;
+
+        /** Its message. */
+        private final String message;
+
+        /** Where the record starts in messages. */
+        private final int offset;
+
+        /** Where the record ends in messages. */
+        private int end;
+
+        /** Its position, once read through the index. */
+        private int pos = -1;
+    }
+
+    /** Magic number at the start of messages: "GMSG". */
+    private static final int MAGIC = 0x474d5347;
+
+    /** Version of the format of messages. */
+    private static final int VERSION = 2;
+
+    /** Size of the magic number and version of messages. */
+    private static final int HEADER = 8;
+
+    /** Magic number at the start of message-index: "GMIX". */
+    private static final int INDEX_MAGIC = 0x474d4958;
+
+    /** Version of the format of message-index. */
+    private static final int INDEX_VERSION = 1;
+
+    /** Size of the magic number, version, counts and end of
+     * message-index. */
+    private static final int INDEX_HEADER = 24;
+
+    /** Length of the runs of characters that are indexed. */
+    private static final int GRAM = 3;
+
+    /** Number of records outside the index that triggers a rebuild. */
+    private static final int REBUILD_THRESHOLD = 256;
+
+    /** The messages file. */
+    private File file;
+
+    /** The message-index file. */
+    private File indexFile;
+
+    /** The contents of messages. */
+    private ByteBuffer messages;
+
+    /** The contents of message-index, or null if there is none. */
+    private ByteBuffer index;
+
+    /** The number of records the index covers. */
+    private int count;
+
+    /** The number of postings of runs of characters. */
+    private int grams;
+
+    /** Where the postings of messages start in the index. */
+    private int messageStart;
+
+    /** Where the postings of runs of characters start in the index. */
+    private int gramStart;
+
+    /** The records the index does not cover, in order, or null before
+     * the files are read. */
+    private List<Record> tail;
+
+    /** The last record read through the index. */
+    private Record last;
+
+}
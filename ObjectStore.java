@@ -0,0 +1,682 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** ObjectStore class for Gitlet, the one place where blobs and commits
+ *  are written to and read from the .gitlet directory.
+ *  New objects are written loose under .gitlet/objects, and repack folds
+ *  every loose object into a packfile. Reads check the packs first,
+ *  then the loose objects, then the files older repositories kept
+ *  directly under .gitlet.
+ *  In a pack, a blob can be stored as a delta against the previous
+ *  version of the same file, the hash of that base followed by the
+ *  Delta instructions.  Bases are rebuilt through a small LRU cache,
+ *  so reading several versions of a file rebuilds each base once.
+ *  Deltas are built and applied in memory, so blobs larger than
+ *  core.bigFileThreshold are never part of one.
+ *  @author Minh Nguyen
+ */
+public class ObjectStore {
+
+    /** Create the store of the given .gitlet directory.
+     * @param gitletDir the .gitlet directory.
+     * @param config the settings of the repository. */
+    public ObjectStore(File gitletDir, Config config) {
+        gitlet = gitletDir;
+        level = config.getInt(Config.COMPRESSION, Deflater.DEFAULT_COMPRESSION);
+        maxDepth = config.getInt(Config.PACK_DEPTH, 10);
+        baseLimit = config.getInt(Config.DELTA_CACHE_BYTES, 32 << 20);
+        bigFileThreshold = config.getInt(Config.BIG_FILE_THRESHOLD,
+                512 << 20);
+        objectsDir = Utils.join(gitletDir, "objects");
+        packDir = Utils.join(gitletDir, "pack");
+    }
+
+    /** Whether the store holds an object.
+     * @param id the hash of the object, which may be null.
+     * @return true if the object exists. */
+    public boolean contains(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        byte[] binary = Utils.uidToBytes(id);
+        for (Pack pack : packs()) {
+            if (pack.find(binary) >= 0) {
+                return true;
+            }
+        }
+        return looseFile(id).exists() || Utils.join(gitlet, id).isFile();
+    }
+
+    /** Read the bytes of an object.
+     * @param id the hash of the object.
+     * @return the bytes of the object. */
+    public byte[] readBytes(String id) {
+        try (InputStream in = open(id)) {
+            byte[] bytes = in.readAllBytes();
+            Trace.add(Trace.Counter.BYTES_READ, bytes.length);
+            return bytes;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s.", id);
+        }
+    }
+
+    /** Open a stream of the bytes of an object.
+     * @param id the hash of the object.
+     * @return the stream, which the caller closes. */
+    public InputStream open(String id) {
+        Trace.count(Trace.Counter.OBJECTS_READ);
+        InputStream in = openStored(id);
+        try {
+            int flags = in.read();
+            if (flags == DEFLATED) {
+                return new InflaterInputStream(in, new Inflater(), Blobs.CHUNK);
+            } else if (flags == DELTA) {
+                return new ByteArrayInputStream(applyDelta(in));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s.", id);
+        }
+        return in;
+    }
+
+    /** Get the size of an object, reading it through a chunk at a time,
+     * or only its header if it is a delta.
+     * @param id the hash of the object.
+     * @return its size in bytes. */
+    public long size(String id) {
+        try (InputStream in = openStored(id)) {
+            int flags = in.read();
+            if (flags == DELTA) {
+                in.skipNBytes(Utils.UID_BYTES);
+                return Delta.resultLength(in.readNBytes(VARINT_BYTES * 2));
+            }
+            InputStream data = flags == DEFLATED
+                    ? new InflaterInputStream(in, new Inflater(), Blobs.CHUNK)
+                    : in;
+            return data.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s.", id);
+        }
+    }
+
+    /** Write the bytes of an object to a file.  An object stored as is
+     * is copied with FileChannel.transferTo, which never brings it into
+     * the heap; others are inflated a chunk at a time.
+     * @param id the hash of the object.
+     * @param dest the file to create or overwrite. */
+    public void copyTo(String id, File dest) {
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (transferRaw(id, out)) {
+                Trace.count(Trace.Counter.OBJECTS_READ);
+            } else {
+                try (InputStream in = open(id)) {
+                    in.transferTo(Channels.newOutputStream(out));
+                }
+            }
+            Trace.add(Trace.Counter.BYTES_READ, out.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy an object to a channel with transferTo, if it is stored as is.
+     * @param id the hash of the object.
+     * @param out the channel, still empty.
+     * @return false if the object is not stored as is. */
+    private boolean transferRaw(String id, FileChannel out)
+        throws IOException {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        byte[] binary = Utils.uidToBytes(id);
+        for (Pack pack : packs()) {
+            int pos = pack.find(binary);
+            if (pos >= 0) {
+                return pack.transferRaw(pos, out);
+            }
+        }
+        File loose = looseFile(id);
+        File legacy = Utils.join(gitlet, id);
+        long skip = 1;
+        if (!loose.exists()) {
+            if (!legacy.isFile()) {
+                return false;
+            }
+            loose = legacy;
+            skip = 0;
+        }
+        try (FileChannel in = FileChannel.open(loose.toPath(),
+                StandardOpenOption.READ)) {
+            if (skip == 1) {
+                ByteBuffer flags = ByteBuffer.allocate(1);
+                if (in.read(flags, 0) != 1 || flags.get(0) != RAW) {
+                    return false;
+                }
+            }
+            Pack.transferFully(in, skip, in.size() - skip, out);
+            return true;
+        }
+    }
+
+    /** Read an object as a String.
+     * @param id the hash of the object.
+     * @return the contents of the object. */
+    public String readString(String id) {
+        return new String(readBytes(id), StandardCharsets.UTF_8);
+    }
+
+    /** Read a serialized object.
+     * @param id the hash of the object.
+     * @param expectedClass the class of the object.
+     * @param <T> the type of the object.
+     * @return the object. */
+    public <T extends Serializable> T readObject(String id,
+                                                 Class<T> expectedClass) {
+        byte[] bytes = readBytes(id);
+        Trace.Phase phase = Trace.phase("deserialize");
+        try (phase) {
+            return Utils.deserialize(bytes, expectedClass);
+        }
+    }
+
+    /** Write an object unless the store already holds it.
+     * @param id the hash of the object.
+     * @param contents Strings or byte arrays, as for Utils.writeContents. */
+    public void writeBytes(String id, Object... contents) {
+        if (contains(id)) {
+            return;
+        }
+        File tmp = tempFile(id);
+        try (OutputStream out = openLoose(tmp)) {
+            for (Object obj : contents) {
+                if (obj instanceof byte[]) {
+                    out.write((byte[]) obj);
+                } else {
+                    out.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object %s.", id);
+        }
+        install(tmp, id);
+    }
+
+    /** Write the content of a file as an object, a chunk at a time,
+     * unless the store already holds it.
+     * @param id the hash of the object.
+     * @param source the file. */
+    public void writeFile(String id, File source) {
+        if (contains(id)) {
+            return;
+        }
+        File tmp = tempFile(id);
+        if (level == 0) {
+            try (FileChannel in = FileChannel.open(source.toPath(),
+                    StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                out.write(ByteBuffer.wrap(new byte[] {RAW}));
+                long size = in.size();
+                long done = 0;
+                while (done < size) {
+                    done += in.transferTo(done, size - done, out);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write object %s.", id);
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(source.toPath());
+                 OutputStream out = openLoose(tmp)) {
+                in.transferTo(out);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write object %s.", id);
+            }
+        }
+        install(tmp, id);
+    }
+
+    /** Write a serialized object unless the store already holds it.
+     * @param id the hash of the object.
+     * @param obj the object. */
+    public void writeObject(String id, Serializable obj) {
+        if (!contains(id)) {
+            writeBytes(id, Utils.serialize(obj));
+        }
+    }
+
+    /** Fold every loose object, and every existing pack, into one new pack.
+     * A blob is stored as a delta against the base proposed for it when
+     * that is much smaller, unless the chain of deltas leading to it
+     * would be longer than pack.depth or either blob is larger than
+     * core.bigFileThreshold.
+     * @param bases the proposed base of each blob, each base proposed
+     *              before the blobs built on it.
+     * @return the number of loose objects that were packed. */
+    public int repack(Map<String, String> bases) {
+        TreeSet<String> ids = new TreeSet<>(looseIds());
+        int loose = ids.size();
+        for (Pack pack : packs()) {
+            for (int i = 0; i < pack.size(); i += 1) {
+                ids.add(pack.idAt(i));
+            }
+        }
+        if (loose == 0) {
+            return 0;
+        }
+        writePack(ids, bases);
+        return loose;
+    }
+
+    /** Delete the loose objects that are not reachable, unless they were
+     * written within the grace period.
+     * @param reachable the hashes of the reachable objects.
+     * @param cutoff the time in milliseconds before which an unreachable
+     *               object may be deleted.
+     * @return the number of objects deleted. */
+    public int prune(Set<String> reachable, long cutoff) {
+        int pruned = 0;
+        for (String id : looseIds()) {
+            File file = looseFile(id).exists() ? looseFile(id)
+                    : Utils.join(gitlet, id);
+            if (!reachable.contains(id) && file.lastModified() < cutoff
+                    && file.delete()) {
+                pruned += 1;
+            }
+        }
+        return pruned;
+    }
+
+    /** Prune the loose objects, then repack the reachable objects into one
+     * pack.  Unreachable objects in a pack younger than the grace period
+     * are written back as loose objects dated like the pack, so that a
+     * later gc prunes them once the period is over; the others are
+     * dropped.
+     * @param reachable the hashes of the reachable objects.
+     * @param cutoff the time in milliseconds before which an unreachable
+     *               object may be deleted.
+     * @param bases the proposed delta base of each blob, as for repack.
+     * @return the number of objects deleted. */
+    public int gc(Set<String> reachable, long cutoff,
+                  Map<String, String> bases) {
+        int pruned = prune(reachable, cutoff);
+        TreeSet<String> ids = new TreeSet<>();
+        for (String id : looseIds()) {
+            if (reachable.contains(id)) {
+                ids.add(id);
+            }
+        }
+        HashSet<String> dropped = new HashSet<>();
+        for (Pack pack : packs()) {
+            long packTime = pack.getFile().lastModified();
+            for (int i = 0; i < pack.size(); i += 1) {
+                String id = pack.idAt(i);
+                if (reachable.contains(id)) {
+                    ids.add(id);
+                } else if (packTime >= cutoff) {
+                    loosen(id, packTime);
+                } else {
+                    dropped.add(id);
+                }
+            }
+        }
+        dropped.removeIf(id -> looseFile(id).exists());
+        writePack(ids, bases);
+        return pruned + dropped.size();
+    }
+
+    /** Write a pack of the given objects, delete every other pack, and
+     * delete the loose copies of the objects it holds.
+     * @param ids the hashes of the objects.
+     * @param bases the proposed delta base of each blob. */
+    private void writePack(TreeSet<String> ids, Map<String, String> bases) {
+        HashMap<String, byte[]> deltas = new HashMap<>();
+        HashMap<String, Integer> depth = new HashMap<>();
+        HashMap<String, Long> sizes = new HashMap<>();
+        Trace.Phase deltaPhase = Trace.phase("delta");
+        try (deltaPhase) {
+            for (Map.Entry<String, String> entry : bases.entrySet()) {
+                String target = entry.getKey();
+                String base = entry.getValue();
+                int d = depth.getOrDefault(base, 0) + 1;
+                if (d > maxDepth || !ids.contains(target)
+                        || !ids.contains(base) || isBig(base, sizes)
+                        || isBig(target, sizes)) {
+                    continue;
+                }
+                byte[] delta = Delta.encode(readBase(base), readBase(target));
+                if (delta != null) {
+                    byte[] stored = new byte[Utils.UID_BYTES + delta.length];
+                    System.arraycopy(Utils.uidToBytes(base), 0, stored, 0,
+                            Utils.UID_BYTES);
+                    System.arraycopy(delta, 0, stored, Utils.UID_BYTES,
+                            delta.length);
+                    deltas.put(target, stored);
+                    depth.put(target, d);
+                }
+            }
+        }
+        File newPack;
+        Trace.Phase packPhase = Trace.phase("write pack");
+        try (packPhase) {
+            newPack = Pack.write(packDir, new ArrayList<>(ids), this, deltas);
+        }
+        Trace.add(Trace.Counter.OBJECTS_WRITTEN, ids.size());
+        Trace.add(Trace.Counter.BYTES_WRITTEN, newPack.length());
+        for (Pack pack : packs()) {
+            pack.close();
+            if (!pack.getFile().equals(newPack)) {
+                pack.getFile().delete();
+                Pack.idxFor(pack.getFile()).delete();
+            }
+        }
+        loaded = null;
+        for (String id : looseIds()) {
+            if (ids.contains(id)) {
+                looseFile(id).delete();
+                Utils.join(gitlet, id).delete();
+            }
+        }
+    }
+
+    /** Whether an object is too large to take part in a delta.
+     * @param id the hash of the object.
+     * @param sizes the sizes found so far, by hash.
+     * @return true if it is larger than core.bigFileThreshold. */
+    private boolean isBig(String id, Map<String, Long> sizes) {
+        return sizes.computeIfAbsent(id, this::size) > bigFileThreshold;
+    }
+
+    /** Write a packed object back as a loose object, unless it already is.
+     * @param id the hash of the object.
+     * @param time the modification time to give the loose object. */
+    private void loosen(String id, long time) {
+        File loose = looseFile(id);
+        if (loose.exists()) {
+            return;
+        }
+        File tmp = tempFile(id);
+        try (InputStream in = openWhole(id);
+             OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object %s.", id);
+        }
+        install(tmp, id);
+        loose.setLastModified(time);
+    }
+
+    /** Open the stored form of an object with its bytes whole, rebuilding
+     * it if it is stored as a delta.
+     * @param id the hash of the object.
+     * @return a stream of the flags byte followed by the object's bytes. */
+    InputStream openWhole(String id) {
+        InputStream in = openStored(id);
+        try {
+            int flags = in.read();
+            if (flags == DELTA) {
+                byte[] whole = applyDelta(in);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                if (level == 0) {
+                    bytes.write(RAW);
+                    bytes.write(whole);
+                } else {
+                    bytes.write(DEFLATED);
+                    try (OutputStream out = new DeflaterOutputStream(bytes,
+                            new Deflater(level), Blobs.CHUNK)) {
+                        out.write(whole);
+                    }
+                }
+                return new ByteArrayInputStream(bytes.toByteArray());
+            }
+            return new SequenceInputStream(
+                    new ByteArrayInputStream(new byte[] {(byte) flags}), in);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s.", id);
+        }
+    }
+
+    /** Open the stored form of an object, its flags byte first.
+     * @param id the hash of the object.
+     * @return a stream of the flags byte followed by the object's bytes. */
+    InputStream openStored(String id) {
+        if (id != null && id.length() == Utils.UID_LENGTH) {
+            byte[] binary = Utils.uidToBytes(id);
+            for (Pack pack : packs()) {
+                int pos = pack.find(binary);
+                if (pos >= 0) {
+                    return pack.openStored(pos);
+                }
+            }
+            try {
+                File loose = looseFile(id);
+                if (loose.exists()) {
+                    return new BufferedInputStream(
+                            new FileInputStream(loose), Blobs.CHUNK);
+                }
+                File legacy = Utils.join(gitlet, id);
+                if (legacy.isFile()) {
+                    return new SequenceInputStream(
+                            new ByteArrayInputStream(new byte[] {RAW}),
+                            new BufferedInputStream(
+                                    new FileInputStream(legacy), Blobs.CHUNK));
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read object %s.", id);
+            }
+        }
+        throw Utils.error("No object with id %s.", id);
+    }
+
+    /** Rebuild an object stored as a delta.
+     * @param in the stored form, just past its flags byte.
+     * @return the bytes of the object. */
+    private byte[] applyDelta(InputStream in) throws IOException {
+        try (in) {
+            byte[] base = in.readNBytes(Utils.UID_BYTES);
+            return Delta.apply(readBase(Utils.bytesToUid(base, 0)),
+                    in.readAllBytes());
+        }
+    }
+
+    /** Read the bytes of a delta base through the cache of bases.
+     * @param id the hash of the base.
+     * @return its bytes. */
+    private byte[] readBase(String id) {
+        synchronized (bases) {
+            byte[] cached = bases.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] bytes = readBytes(id);
+        synchronized (bases) {
+            bases.put(id, bytes);
+            baseBytes += bytes.length;
+            Iterator<byte[]> eldest = bases.values().iterator();
+            while (baseBytes > baseLimit && !bases.isEmpty()) {
+                baseBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return bytes;
+    }
+
+    /** Get the temporary file a loose object is written to.
+     * @param id the hash of the object.
+     * @return the file. */
+    private File tempFile(String id) {
+        objectsDir.mkdir();
+        return Utils.join(objectsDir, id + ".tmp");
+    }
+
+    /** Open a new loose object for writing, its flags byte written, and
+     * compressing what follows unless the compression level is 0.
+     * @param tmp the file to write.
+     * @return the stream, which the caller closes. */
+    private OutputStream openLoose(File tmp) throws IOException {
+        OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath()), Blobs.CHUNK);
+        if (level == 0) {
+            out.write(RAW);
+            return out;
+        }
+        out.write(DEFLATED);
+        return new DeflaterOutputStream(out, new Deflater(level), Blobs.CHUNK);
+    }
+
+    /** Move a finished temporary file into place as a loose object.
+     * @param tmp the temporary file.
+     * @param id the hash of the object. */
+    private void install(File tmp, String id) {
+        Trace.count(Trace.Counter.OBJECTS_WRITTEN);
+        Trace.add(Trace.Counter.BYTES_WRITTEN, tmp.length());
+        try {
+            Files.move(tmp.toPath(), looseFile(id).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object %s.", id);
+        }
+    }
+
+    /** Get the packs of the store, opening them on first use.
+     * @return the open packs. */
+    private List<Pack> packs() {
+        List<Pack> result = loaded;
+        if (result == null) {
+            synchronized (this) {
+                if (loaded == null) {
+                    List<Pack> opened = new ArrayList<>();
+                    File[] files = packDir.listFiles((dir, name) ->
+                            name.startsWith("pack-") && name.endsWith(".pack"));
+                    if (files != null) {
+                        Arrays.sort(files);
+                        for (File file : files) {
+                            opened.add(new Pack(file));
+                        }
+                    }
+                    loaded = opened;
+                }
+                result = loaded;
+            }
+        }
+        return result;
+    }
+
+    /** Get the hashes of all loose objects, old-style ones included.
+     * @return the hashes. */
+    private List<String> looseIds() {
+        List<String> result = new ArrayList<>();
+        for (File dir : new File[] {objectsDir, gitlet}) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (isUid(name)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Get the file of a loose object.
+     * @param id the hash of the object.
+     * @return the file. */
+    private File looseFile(String id) {
+        return Utils.join(objectsDir, id);
+    }
+
+    /** Whether a file name is a hexadecimal hash.
+     * @param name the file name.
+     * @return true if it is. */
+    private static boolean isUid(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Flags byte of an object stored as is. */
+    static final byte RAW = 0;
+
+    /** Flags byte of an object stored zlib-compressed. */
+    static final byte DEFLATED = 1;
+
+    /** Flags byte of a packed object stored as a delta. */
+    static final byte DELTA = 2;
+
+    /** The most bytes an unsigned varint of an int takes. */
+    private static final int VARINT_BYTES = 5;
+
+    /** The compression level of new objects. */
+    private int level;
+
+    /** The .gitlet directory. */
+    private File gitlet;
+
+    /** The directory of loose objects. */
+    private File objectsDir;
+
+    /** The directory of packs. */
+    private File packDir;
+
+    /** The open packs, or null before first use. */
+    private volatile List<Pack> loaded;
+
+    /** The longest chain of deltas repack builds. */
+    private int maxDepth;
+
+    /** The most bytes of delta bases kept in memory. */
+    private long baseLimit;
+
+    /** The size above which a blob takes no part in a delta. */
+    private long bigFileThreshold;
+
+    /** The delta bases rebuilt so far, least recently used first. */
+    private final LinkedHashMap<String, byte[]> bases =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The number of bytes in the cache of bases. */
+    private long baseBytes;
+
+}
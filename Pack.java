@@ -0,0 +1,355 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/** Pack class for Gitlet, a class that reads and writes packfiles.
+ *  A packfile is an append-only sequence of stored objects, and its
+ *  .idx companion is a sorted array of binary hashes, each with the
+ *  offset of its object in the pack, so lookup is a binary search.
+ *
+ *  Pack layout: "GPAK", version, then for every object its flags byte,
+ *  its length as a long, and its bytes.  An object stored as a delta
+ *  has the DELTA flag, and its bytes are the hash of its base and the
+ *  Delta instructions; the base is always in the same pack.
+ *  Index layout: "GIDX", version, a 256-entry fanout table of cumulative
+ *  counts by first hash byte, the sorted hashes, then their offsets.
+ *  @author Minh Nguyen
+ */
+public class Pack {
+
+    /** Open the pack stored in PACKFILE and its .idx companion.
+     * @param packFile the .pack file. */
+    public Pack(File packFile) {
+        pack = packFile;
+        File idxFile = idxFor(packFile);
+        try {
+            data = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            try (FileChannel idx = FileChannel.open(idxFile.toPath(),
+                    StandardOpenOption.READ)) {
+                index = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot open pack %s.", packFile.getName());
+        }
+        if (index.getInt(0) != IDX_MAGIC || index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack index %s.", idxFile.getName());
+        }
+        count = index.getInt(HEADER + 4 * 255);
+    }
+
+    /** Get the pack file.
+     * @return the .pack file. */
+    public File getFile() {
+        return pack;
+    }
+
+    /** Get the number of objects in the pack.
+     * @return the object count. */
+    public int size() {
+        return count;
+    }
+
+    /** Find the position of an object in the sorted index.
+     * @param id the binary hash of the object.
+     * @return its position, or -1 if the pack does not hold it. */
+    public int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(HEADER + 4 * (first - 1));
+        int hi = index.getInt(HEADER + 4 * first) - 1;
+        byte[] probe = new byte[Utils.UID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(hashOffset(mid), probe);
+            int cmp = Arrays.compareUnsigned(probe, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Get the hash at a position of the sorted index.
+     * @param pos the position.
+     * @return the hexadecimal hash. */
+    public String idAt(int pos) {
+        byte[] id = new byte[Utils.UID_BYTES];
+        index.get(hashOffset(pos), id);
+        return Utils.bytesToUid(id, 0);
+    }
+
+    /** Open the stored form, flags byte first, of the object at a position.
+     * @param pos the position in the sorted index.
+     * @return a stream of the flags byte followed by the object's bytes. */
+    public InputStream openStored(int pos) {
+        long offset = index.getLong(HEADER + 4 * 256
+                + count * Utils.UID_BYTES + 8 * pos);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+            readFully(header, offset);
+            long length = header.getLong(1);
+            return new SequenceInputStream(
+                    new ByteArrayInputStream(header.array(), 0, 1),
+                    new Region(offset + ENTRY_HEADER, length));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack %s.", pack.getName());
+        }
+    }
+
+    /** Copy the object at a position to a channel without passing it
+     * through the heap, if it is stored as is.
+     * @param pos the position in the sorted index.
+     * @param out the channel to write to.
+     * @return false if the object is compressed or a delta. */
+    public boolean transferRaw(int pos, FileChannel out) {
+        long offset = index.getLong(HEADER + 4 * 256
+                + count * Utils.UID_BYTES + 8 * pos);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+            readFully(header, offset);
+            if (header.get(0) != ObjectStore.RAW) {
+                return false;
+            }
+            transferFully(data, offset + ENTRY_HEADER, header.getLong(1), out);
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack %s.", pack.getName());
+        }
+    }
+
+    /** Copy a region of one channel to another with transferTo.
+     * @param in the channel to read.
+     * @param start the offset of the first byte.
+     * @param length the number of bytes.
+     * @param out the channel to write to. */
+    static void transferFully(FileChannel in, long start, long length,
+                              FileChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(start + done, length - done, out);
+            if (n <= 0 && start + done >= in.size()) {
+                throw new IOException("truncated object");
+            }
+            done += n;
+        }
+    }
+
+    /** Close the pack's file handles. */
+    public void close() {
+        try {
+            data.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Write a new pack holding the given objects.
+     * @param dir the directory that holds the packs.
+     * @param ids the hashes of the objects, in sorted order.
+     * @param store the store the objects are read from.
+     * @param deltas the stored form of the objects kept as deltas.
+     * @return the new .pack file. */
+    public static File write(File dir, List<String> ids, ObjectStore store,
+                             Map<String, byte[]> deltas) {
+        dir.mkdirs();
+        File tmpPack = Utils.join(dir, "tmp.pack");
+        File tmpIdx = Utils.join(dir, "tmp.idx");
+        long[] offsets = new long[ids.size()];
+        try (FileChannel out = FileChannel.open(tmpPack.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+            buf.putInt(PACK_MAGIC).putInt(VERSION).flip();
+            writeFully(out, buf);
+            for (int i = 0; i < ids.size(); i += 1) {
+                offsets[i] = out.position();
+                byte[] delta = deltas.get(ids.get(i));
+                if (delta != null) {
+                    buf.clear();
+                    buf.put(ObjectStore.DELTA).putLong(delta.length).flip();
+                    writeFully(out, buf);
+                    writeFully(out, ByteBuffer.wrap(delta));
+                    continue;
+                }
+                try (InputStream in = store.openWhole(ids.get(i))) {
+                    buf.clear();
+                    buf.put((byte) in.read()).putLong(0).flip();
+                    writeFully(out, buf);
+                    long length = 0;
+                    int n;
+                    buf.clear();
+                    while ((n = in.read(buf.array())) >= 0) {
+                        buf.limit(n);
+                        writeFully(out, buf);
+                        buf.clear();
+                        length += n;
+                    }
+                    buf.putLong(length).flip();
+                    out.write(buf, offsets[i] + 1);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack.");
+        }
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream
+                        (tmpIdx.toPath()), BUFFER))) {
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(VERSION);
+            int total = 0;
+            for (int n : fanout) {
+                total += n;
+                out.writeInt(total);
+            }
+            for (String id : ids) {
+                out.write(Utils.uidToBytes(id));
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack index.");
+        }
+        String name = "pack-" + Utils.sha1(String.join("", ids));
+        File packFile = Utils.join(dir, name + ".pack");
+        try {
+            Files.move(tmpPack.toPath(), packFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpIdx.toPath(), idxFor(packFile).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot install pack %s.", name);
+        }
+        return packFile;
+    }
+
+    /** Get the index file that belongs to a pack.
+     * @param packFile the .pack file.
+     * @return its .idx file. */
+    public static File idxFor(File packFile) {
+        String name = packFile.getName();
+        return new File(packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Byte offset of the hash at a position of the index.
+     * @param pos the position.
+     * @return the offset. */
+    private int hashOffset(int pos) {
+        return HEADER + 4 * 256 + pos * Utils.UID_BYTES;
+    }
+
+    /** Fill BUF from the pack starting at POSITION.
+     * @param buf the buffer to fill.
+     * @param position the offset in the pack. */
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = data.read(buf, position);
+            if (n < 0) {
+                throw new IOException("truncated pack");
+            }
+            position += n;
+        }
+    }
+
+    /** Write all of BUF to OUT.
+     * @param out the channel.
+     * @param buf the bytes to write. */
+    private static void writeFully(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /** A stream over a region of the pack, read with positional reads
+     *  so that any number of them can be open at once. */
+    private class Region extends InputStream {
+
+        /** A stream of the LENGTH bytes of the pack starting at START.
+         * @param start the offset of the first byte.
+         * @param length the number of bytes. */
+        Region(long start, long length) {
+            position = start;
+            end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int want = (int) Math.min(len, end - position);
+            int n = data.read(ByteBuffer.wrap(b, off, want), position);
+            if (n < 0) {
+                throw new IOException("truncated pack");
+            }
+            position += n;
+            return n;
+        }
+
+        /** The offset of the next byte to read. */
+        private long position;
+
+        /** The offset just past the region. */
+        private long end;
+    }
+
+    /** Magic number at the start of a pack: "GPAK". */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** Magic number at the start of an index: "GIDX". */
+    private static final int IDX_MAGIC = 0x47494458;
+
+    /** Version of the pack and index formats. */
+    private static final int VERSION = 1;
+
+    /** Size of the magic number and version of a file. */
+    private static final int HEADER = 8;
+
+    /** Size of the flags byte and length before each object. */
+    private static final int ENTRY_HEADER = 9;
+
+    /** Size of the output buffers used when writing packs. */
+    private static final int BUFFER = 1 << 16;
+
+    /** The .pack file. */
+    private File pack;
+
+    /** The open pack contents. */
+    private FileChannel data;
+
+    /** The mapped .idx contents. */
+    private MappedByteBuffer index;
+
+    /** The number of objects in the pack. */
+    private int count;
+
+}
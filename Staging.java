@@ -1,4 +1,7 @@
 package gitlet;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 import java.util.TreeMap;
@@ -75,6 +78,28 @@ public class Staging implements Serializable {
         untracked.put(fileName, hashId);
     }
 
+    /** Write the stage to a state file.
+     * @param out the stream to write to. */
+    public void write(DataOutputStream out) throws IOException {
+        StateFile.writeMap(out, tracked);
+        StateFile.writeMap(out, removed);
+        StateFile.writeMap(out, modifiedList);
+        StateFile.writeMap(out, untracked);
+    }
+
+    /** Read the stage from a state file.
+     * @param in the stream to read from. */
+    public void read(DataInputStream in) throws IOException {
+        tracked = StateFile.readMap(in);
+        removed = StateFile.readMap(in);
+        modifiedList = StateFile.readMap(in);
+        untracked = StateFile.readMap(in);
+    }
+
+    /** Pinned so that the stage in the .gitlet/saves of older
+     *  repositories can still be read. */
+    private static final long serialVersionUID = 5653786585573365030L;
+
     /** A map of files and their hash id that are tracked in the stage. */
     private TreeMap<String, String> tracked;
 
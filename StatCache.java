@@ -0,0 +1,219 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** StatCache class for Gitlet, a class that remembers the size,
+ *  modification time and inode of every working file it has hashed,
+ *  next to that hash, in .gitlet/statcache.
+ *  A file is only read and hashed again when its metadata changes.
+ *  As in git, an entry whose modification time is too close to the time
+ *  the cache was written is "racy": the file could have changed again
+ *  within the same timestamp tick, so it is always rehashed.
+ *  @author Minh Nguyen
+ */
+public class StatCache {
+
+    /** Load the stat cache of the given .gitlet directory.
+     * @param gitletDir the .gitlet directory. */
+    public StatCache(File gitletDir) {
+        file = Utils.join(gitletDir, "statcache");
+        entries = new ConcurrentHashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream
+                (Files.newInputStream(file.toPath()), Blobs.CHUNK))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            writtenAt = in.readLong();
+            int count = in.readInt();
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long inode = in.readLong();
+                in.readFully(id);
+                entries.put(path, new Entry(size, mtime, inode,
+                        Utils.bytesToUid(id, 0)));
+            }
+        } catch (IOException excp) {
+            entries.clear();
+        }
+    }
+
+    /** Get the hashId a working file would have as a blob, rehashing the
+     * file only if its size, modification time or inode changed since it
+     * was last hashed, or if its cached entry is racy.
+     * @param path the name of the file, relative to the working directory.
+     * @param source the file.
+     * @return the hashId. */
+    public String hash(String path, File source) {
+        BasicFileAttributes attrs = stat(source);
+        Entry entry = entries.get(path);
+        if (entry != null && entry.matches(attrs)
+                && entry.mtime + RACY_WINDOW < writtenAt) {
+            Trace.count(Trace.Counter.STAT_CACHE_HITS);
+            return entry.hash;
+        }
+        Trace.count(Trace.Counter.STAT_CACHE_MISSES);
+        String hash = Blobs.hashOf(path, source);
+        entries.put(path, new Entry(attrs, hash));
+        dirty = true;
+        return hash;
+    }
+
+    /** Record that a working file was just written with a known hashId.
+     * @param path the name of the file, relative to the working directory.
+     * @param source the file.
+     * @param hash the hashId of its content. */
+    public void update(String path, File source, String hash) {
+        entries.put(path, new Entry(stat(source), hash));
+        dirty = true;
+    }
+
+    /** Forget a working file.
+     * @param path the name of the file, relative to the working directory. */
+    public void remove(String path) {
+        if (entries.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Write the cache back if it changed, dropping entries of files that
+     * no longer exist. */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        File root = file.getParentFile().getParentFile();
+        entries.keySet().removeIf(path -> !Utils.join(root, path).isFile());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()),
+                        Blobs.CHUNK))) {
+            writtenAt = System.currentTimeMillis();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(writtenAt);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+                out.write(Utils.uidToBytes(entry.hash));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write stat cache.");
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write stat cache.");
+        }
+        dirty = false;
+    }
+
+    /** Read the metadata of a file.
+     * @param source the file.
+     * @return its attributes. */
+    private static BasicFileAttributes stat(File source) {
+        try {
+            return Files.readAttributes(source.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The cached metadata and hashId of one working file. */
+    private static class Entry {
+
+        /** An entry for a file with the given metadata and HASH.
+         * @param attrs the metadata.
+         * @param hash the hashId. */
+        Entry(BasicFileAttributes attrs, String hash) {
+            this(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                    inodeOf(attrs), hash);
+        }
+
+        /** An entry with the given fields.
+         * @param size the size in bytes.
+         * @param mtime the modification time in milliseconds.
+         * @param inode the inode, or whatever key the filesystem uses.
+         * @param hash the hashId. */
+        Entry(long size, long mtime, long inode, String hash) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.hash = hash;
+        }
+
+        /** Whether a file still has the metadata of this entry.
+         * @param attrs the file's current metadata.
+         * @return true if size, modification time and inode all match. */
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && mtime == attrs.lastModifiedTime().toMillis()
+                    && inode == inodeOf(attrs);
+        }
+
+        /** Get a number that identifies the file on its filesystem; on
+         * Unix the file key is built from the device and inode.
+         * @param attrs the file's metadata.
+         * @return the number. */
+        private static long inodeOf(BasicFileAttributes attrs) {
+            Object key = attrs.fileKey();
+            return key == null ? 0 : key.hashCode();
+        }
+
+        /** The size in bytes. */
+        private final long size;
+
+        /** The modification time in milliseconds. */
+        private final long mtime;
+
+        /** The inode. */
+        private final long inode;
+
+        /** The hashId of the content. */
+        private final String hash;
+    }
+
+    /** Magic number at the start of the file: "GSTC". */
+    private static final int MAGIC = 0x47535443;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** How close, in milliseconds, a modification time may come to the
+     *  time the cache was written before the entry counts as racy.  This
+     *  covers filesystems with coarse timestamps. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** The cache file. */
+    private File file;
+
+    /** The time the cache file was last written. */
+    private long writtenAt;
+
+    /** The entries, by file name. */
+    private ConcurrentHashMap<String, Entry> entries;
+
+    /** Whether the entries changed since the cache was loaded. */
+    private volatile boolean dirty;
+
+}
@@ -0,0 +1,131 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** StateFile class for Gitlet, a class for one of the small files that
+ *  hold the state of the repository: HEAD, refs and staging.
+ *  Each is a versioned binary file, "GSTA", a version number, then the
+ *  fields written with DataOutputStream.  A state file remembers what
+ *  it last read or wrote, and is only rewritten when that changes.
+ *  @author Minh Nguyen
+ */
+public class StateFile {
+
+    /** Something that can write its fields to a state file. */
+    public interface Writer {
+        /** Write the fields.
+         * @param out the stream to write to. */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Something that can read its fields from a state file. */
+    public interface Reader {
+        /** Read the fields.
+         * @param in the stream to read from. */
+        void read(DataInputStream in) throws IOException;
+    }
+
+    /** The state file with the given name.
+     * @param gitletDir the .gitlet directory.
+     * @param name the name of the file. */
+    public StateFile(File gitletDir, String name) {
+        file = Utils.join(gitletDir, name);
+    }
+
+    /** Whether the file exists.
+     * @return true if it does. */
+    public boolean exists() {
+        return file.isFile();
+    }
+
+    /** Read the file.
+     * @param reader what reads the fields. */
+    public void read(Reader reader) {
+        if (!file.isFile()) {
+            return;
+        }
+        contents = Utils.readContents(file);
+        try (DataInputStream in = new DataInputStream
+                (new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unknown format of %s.", file.getName());
+            }
+            reader.read(in);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt %s.", file.getName());
+        }
+    }
+
+    /** Write the file, unless it would be unchanged.
+     * @param writer what writes the fields. */
+    public void write(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writer.write(out);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing %s.", file.getName());
+        }
+        byte[] updated = bytes.toByteArray();
+        if (Arrays.equals(updated, contents)) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(tmp, updated);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", file.getName());
+        }
+        contents = updated;
+    }
+
+    /** Write a map of Strings.
+     * @param out the stream to write to.
+     * @param map the map. */
+    public static void writeMap(DataOutputStream out, Map<String, String> map)
+        throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /** Read a map of Strings written by writeMap.
+     * @param in the stream to read from.
+     * @return the map. */
+    public static TreeMap<String, String> readMap(DataInputStream in)
+        throws IOException {
+        TreeMap<String, String> map = new TreeMap<>();
+        int size = in.readInt();
+        for (int i = 0; i < size; i += 1) {
+            map.put(in.readUTF(), in.readUTF());
+        }
+        return map;
+    }
+
+    /** Magic number at the start of a state file: "GSTA". */
+    private static final int MAGIC = 0x47535441;
+
+    /** Version of the state file format. */
+    private static final int VERSION = 1;
+
+    /** The file. */
+    private File file;
+
+    /** The bytes last read from or written to the file. */
+    private byte[] contents;
+
+}
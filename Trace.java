@@ -0,0 +1,324 @@
+package gitlet;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Trace class for Gitlet, a class that times the phases of a command
+ *  and counts the objects, bytes, hashes and cache lookups it makes.
+ *  Tracing is on with --trace before the command or GITLET_TRACE=1 in
+ *  the environment; a summary is then printed to standard error when
+ *  the command ends, with an error or not.  Independently
+ *  of that, when a Flight Recorder recording has the gitlet.Command
+ *  event enabled, each phase is recorded as a gitlet.Phase event and
+ *  each command as a gitlet.Command event carrying the counters, so
+ *  many runs can be profiled together.  When neither is on, a phase is
+ *  a shared object that does nothing and counting is a single check.
+ *  Phases may nest, and a phase run on several threads adds up the time
+ *  of each thread, so the phase times need not add up to the total.
+ *  @author Minh Nguyen
+ */
+public class Trace {
+
+    /** What is counted. */
+    public enum Counter {
+        /** Objects opened in the object store. */
+        OBJECTS_READ("objects read"),
+        /** Bytes of objects read. */
+        BYTES_READ("bytes read"),
+        /** Objects added to the object store. */
+        OBJECTS_WRITTEN("objects written"),
+        /** Bytes of objects written. */
+        BYTES_WRITTEN("bytes written"),
+        /** SHA-1 hashes computed. */
+        HASHES("hashes"),
+        /** Bytes of working files hashed. */
+        BYTES_HASHED("bytes hashed"),
+        /** Commits found in the commit cache. */
+        COMMIT_CACHE_HITS("commit cache hits"),
+        /** Commits read from the object store. */
+        COMMIT_CACHE_MISSES("commit cache misses"),
+        /** Working files whose hash came from the stat cache. */
+        STAT_CACHE_HITS("stat cache hits"),
+        /** Working files hashed again. */
+        STAT_CACHE_MISSES("stat cache misses");
+
+        /** A counter shown as LABEL.
+         * @param label its name in the summary. */
+        Counter(String label) {
+            this.label = label;
+        }
+
+        /** Its name in the summary. */
+        private final String label;
+    }
+
+    /** Turn the summary on or off for the commands that follow.
+     * @param on whether to print it. */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** Whether tracing was asked for in the environment.
+     * @return true if GITLET_TRACE is 1. */
+    public static boolean requested() {
+        return "1".equals(System.getenv("GITLET_TRACE"));
+    }
+
+    /** Start tracing a command, clearing what an earlier command in the
+     * same process counted.
+     * @param args the command line. */
+    public static void start(String[] args) {
+        CommandEvent event = new CommandEvent();
+        counting = enabled || event.isEnabled();
+        if (!counting) {
+            return;
+        }
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+        PHASES.clear();
+        command = String.join(" ", args);
+        startTime = System.nanoTime();
+        finished = false;
+        commandEvent = event;
+        event.begin();
+    }
+
+    /** Finish tracing the command: record its event and print the
+     * summary.  Only the first call after start does anything. */
+    public static synchronized void finish() {
+        if (!counting || finished) {
+            return;
+        }
+        finished = true;
+        long total = System.nanoTime() - startTime;
+        CommandEvent event = commandEvent;
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = command;
+            event.objectsRead = get(Counter.OBJECTS_READ);
+            event.bytesRead = get(Counter.BYTES_READ);
+            event.objectsWritten = get(Counter.OBJECTS_WRITTEN);
+            event.bytesWritten = get(Counter.BYTES_WRITTEN);
+            event.hashes = get(Counter.HASHES);
+            event.bytesHashed = get(Counter.BYTES_HASHED);
+            event.commitCacheHits = get(Counter.COMMIT_CACHE_HITS);
+            event.commitCacheMisses = get(Counter.COMMIT_CACHE_MISSES);
+            event.statCacheHits = get(Counter.STAT_CACHE_HITS);
+            event.statCacheMisses = get(Counter.STAT_CACHE_MISSES);
+            event.commit();
+        }
+        if (enabled) {
+            print(System.err, total);
+        }
+    }
+
+    /** Start timing a phase.  The phase ends when it is closed, so it is
+     * meant for try-with-resources.
+     * @param name the name of the phase.
+     * @return the phase. */
+    public static Phase phase(String name) {
+        return counting ? new Phase(name) : NO_PHASE;
+    }
+
+    /** Count one more of something.
+     * @param counter what is counted. */
+    public static void count(Counter counter) {
+        if (counting) {
+            COUNTERS[counter.ordinal()].increment();
+        }
+    }
+
+    /** Count more of something.
+     * @param counter what is counted.
+     * @param amount how many more. */
+    public static void add(Counter counter, long amount) {
+        if (counting) {
+            COUNTERS[counter.ordinal()].add(amount);
+        }
+    }
+
+    /** Get the count of something so far.
+     * @param counter what is counted.
+     * @return the count. */
+    public static long get(Counter counter) {
+        return COUNTERS[counter.ordinal()].sum();
+    }
+
+    /** Print the summary.
+     * @param out where to print it.
+     * @param total the time of the whole command in nanoseconds. */
+    private static void print(PrintStream out, long total) {
+        out.printf("trace: %s: %.1f ms%n", command, total / 1e6);
+        List<Map.Entry<String, LongAdder[]>> sorted =
+                new ArrayList<>(PHASES.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[1].sum(),
+                a.getValue()[1].sum()));
+        for (Map.Entry<String, LongAdder[]> phase : sorted) {
+            out.printf("  %-24s %8d calls %10.1f ms%n", phase.getKey(),
+                    phase.getValue()[0].sum(),
+                    phase.getValue()[1].sum() / 1e6);
+        }
+        for (Counter counter : Counter.values()) {
+            long value = get(counter);
+            if (value != 0) {
+                out.printf("  %-24s %12d%n", counter.label, value);
+            }
+        }
+        out.flush();
+    }
+
+    /** A phase being timed. */
+    public static class Phase implements AutoCloseable {
+
+        /** Start timing the phase called NAME.
+         * @param name the name. */
+        Phase(String name) {
+            this.name = name;
+            if (name != null) {
+                event = new PhaseEvent();
+                event.begin();
+                start = System.nanoTime();
+            }
+        }
+
+        /** End the phase and add its time to its total. */
+        @Override
+        public void close() {
+            if (name == null) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            LongAdder[] total = PHASES.computeIfAbsent(name,
+                    k -> new LongAdder[] {new LongAdder(), new LongAdder()});
+            total[0].increment();
+            total[1].add(elapsed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.commit();
+            }
+        }
+
+        /** The name of the phase, or null for a phase that is not timed. */
+        private final String name;
+
+        /** The event recording the phase. */
+        private PhaseEvent event;
+
+        /** When the phase started, from System.nanoTime. */
+        private long start;
+    }
+
+    /** Flight Recorder event for one phase of a command. */
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @Description("A timed phase of a Gitlet command")
+    static class PhaseEvent extends Event {
+
+        /** The name of the phase. */
+        @Label("Phase")
+        private String phase;
+    }
+
+    /** Flight Recorder event for a whole command, with its counts. */
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    @Description("A Gitlet command and what it read, wrote and hashed")
+    static class CommandEvent extends Event {
+
+        /** The command line. */
+        @Label("Command")
+        private String command;
+
+        /** Objects opened in the object store. */
+        @Label("Objects Read")
+        private long objectsRead;
+
+        /** Bytes of objects read. */
+        @Label("Bytes Read")
+        @DataAmount
+        private long bytesRead;
+
+        /** Objects added to the object store. */
+        @Label("Objects Written")
+        private long objectsWritten;
+
+        /** Bytes of objects written. */
+        @Label("Bytes Written")
+        @DataAmount
+        private long bytesWritten;
+
+        /** SHA-1 hashes computed. */
+        @Label("Hashes")
+        private long hashes;
+
+        /** Bytes of working files hashed. */
+        @Label("Bytes Hashed")
+        @DataAmount
+        private long bytesHashed;
+
+        /** Commits found in the commit cache. */
+        @Label("Commit Cache Hits")
+        private long commitCacheHits;
+
+        /** Commits read from the object store. */
+        @Label("Commit Cache Misses")
+        private long commitCacheMisses;
+
+        /** Working files whose hash came from the stat cache. */
+        @Label("Stat Cache Hits")
+        private long statCacheHits;
+
+        /** Working files hashed again. */
+        @Label("Stat Cache Misses")
+        private long statCacheMisses;
+    }
+
+    /** The phase returned when nothing is traced. */
+    private static final Phase NO_PHASE = new Phase(null);
+
+    /** The counts, by Counter ordinal. */
+    private static final LongAdder[] COUNTERS =
+            new LongAdder[Counter.values().length];
+
+    static {
+        for (int i = 0; i < COUNTERS.length; i += 1) {
+            COUNTERS[i] = new LongAdder();
+        }
+    }
+
+    /** The number of calls and total nanoseconds of each phase. */
+    private static final ConcurrentHashMap<String, LongAdder[]> PHASES =
+            new ConcurrentHashMap<>();
+
+    /** Whether the summary is printed. */
+    private static boolean enabled;
+
+    /** Whether the current command is being counted and timed. */
+    private static volatile boolean counting;
+
+    /** Whether the current command has finished. */
+    private static boolean finished;
+
+    /** The current command line. */
+    private static String command;
+
+    /** When the current command started, from System.nanoTime. */
+    private static long startTime;
+
+    /** The event recording the current command. */
+    private static CommandEvent commandEvent;
+
+}
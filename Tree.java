@@ -0,0 +1,220 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** Tree class for Gitlet, a class for the content-addressed objects
+ *  that hold the files of a commit, one tree per directory.
+ *  A tree is "GTRE", a version number, the number of entries, then for
+ *  each entry in name order a type byte (BLOB or TREE), the name and
+ *  the binary hashId of the blob or subtree.  Its hashId is the SHA-1
+ *  of "tree" and those bytes, so two commits with the same directory
+ *  share one tree object, and a commit only writes the trees on the
+ *  paths of the files it changed.
+ *  @author Minh Nguyen
+ */
+public class Tree {
+
+    /** Write the trees of a complete set of files.
+     * @param store the object store.
+     * @param files the path and blob hashId of every file.
+     * @return the hashId of the root tree. */
+    public static String write(ObjectStore store, Map<String, String> files) {
+        return update(store, null, new TreeMap<>(files));
+    }
+
+    /** Write the trees of a tree with some files changed.  Subtrees with
+     * no changed file keep their hashId and are not rewritten.
+     * @param store the object store.
+     * @param root the hashId of the root tree, or null for none.
+     * @param changes the path of each changed file and its new blob
+     *                hashId, or null if it was removed.
+     * @return the hashId of the new root tree. */
+    public static String update(ObjectStore store, String root,
+                                SortedMap<String, String> changes) {
+        String result = updateDir(store, root, changes);
+        return result == null ? writeTree(store, new TreeMap<>()) : result;
+    }
+
+    /** Read the files of a tree and all its subtrees.
+     * @param store the object store.
+     * @param root the hashId of the root tree.
+     * @return the path and blob hashId of every file. */
+    public static HashMap<String, String> read(ObjectStore store,
+                                               String root) {
+        HashMap<String, String> files = new HashMap<>();
+        readInto(store, root, "", files);
+        return files;
+    }
+
+    /** Add a tree, its subtrees and their blobs to a set of hashIds.
+     * A tree already in the set is not read again, so trees shared by
+     * many commits are visited once.  The set may be shared by threads.
+     * @param store the object store.
+     * @param root the hashId of the tree.
+     * @param marked the set. */
+    public static void mark(ObjectStore store, String root,
+                            Set<String> marked) {
+        if (!marked.add(root)) {
+            return;
+        }
+        for (Entry entry : readTree(store, root).values()) {
+            if (entry.type == TREE) {
+                mark(store, entry.id, marked);
+            } else {
+                marked.add(entry.id);
+            }
+        }
+    }
+
+    /** Apply changes to one directory.
+     * @param store the object store.
+     * @param treeId the hashId of its tree, or null if it is new.
+     * @param changes the changes, with paths relative to the directory.
+     * @return the hashId of its new tree, or null if it is now empty. */
+    private static String updateDir(ObjectStore store, String treeId,
+                                    SortedMap<String, String> changes) {
+        TreeMap<String, Entry> entries = treeId == null
+                ? new TreeMap<>() : readTree(store, treeId);
+        while (!changes.isEmpty()) {
+            String path = changes.firstKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                String blob = changes.remove(path);
+                if (blob == null) {
+                    entries.remove(path);
+                } else {
+                    entries.put(path, new Entry(BLOB, blob));
+                }
+                continue;
+            }
+            String dir = path.substring(0, slash);
+            SortedMap<String, String> inDir =
+                    changes.subMap(dir + "/", dir + "0");
+            TreeMap<String, String> relative = new TreeMap<>();
+            for (Map.Entry<String, String> change : inDir.entrySet()) {
+                relative.put(change.getKey().substring(slash + 1),
+                        change.getValue());
+            }
+            inDir.clear();
+            Entry old = entries.get(dir);
+            String sub = updateDir(store,
+                    old != null && old.type == TREE ? old.id : null, relative);
+            if (sub == null) {
+                entries.remove(dir);
+            } else {
+                entries.put(dir, new Entry(TREE, sub));
+            }
+        }
+        return entries.isEmpty() ? null : writeTree(store, entries);
+    }
+
+    /** Add the files of a tree to a map.
+     * @param store the object store.
+     * @param treeId the hashId of the tree.
+     * @param prefix the path of the tree followed by "/", or "".
+     * @param files the map. */
+    private static void readInto(ObjectStore store, String treeId,
+                                 String prefix, Map<String, String> files) {
+        for (Map.Entry<String, Entry> entry
+                : readTree(store, treeId).entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().type == TREE) {
+                readInto(store, entry.getValue().id, path + "/", files);
+            } else {
+                files.put(path, entry.getValue().id);
+            }
+        }
+    }
+
+    /** Read the entries of one tree.
+     * @param store the object store.
+     * @param treeId the hashId of the tree.
+     * @return its entries by name. */
+    private static TreeMap<String, Entry> readTree(ObjectStore store,
+                                                   String treeId) {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        byte[] id = new byte[Utils.UID_BYTES];
+        try (DataInputStream in = new DataInputStream
+                (new ByteArrayInputStream(store.readBytes(treeId)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unknown format of tree %s.", treeId);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i += 1) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                in.readFully(id);
+                entries.put(name, new Entry(type, Utils.bytesToUid(id, 0)));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree %s.", treeId);
+        }
+        return entries;
+    }
+
+    /** Write one tree, unless the store already has it.
+     * @param store the object store.
+     * @param entries its entries by name.
+     * @return its hashId. */
+    private static String writeTree(ObjectStore store,
+                                    TreeMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeByte(entry.getValue().type);
+                out.writeUTF(entry.getKey());
+                out.write(Utils.uidToBytes(entry.getValue().id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing tree.");
+        }
+        byte[] contents = bytes.toByteArray();
+        String id = Utils.sha1("tree", contents);
+        if (!store.contains(id)) {
+            store.writeBytes(id, contents);
+        }
+        return id;
+    }
+
+    /** An entry of a tree: a blob or a subtree. */
+    private static class Entry {
+
+        /** An entry of TYPE with hashId ID.
+         * @param type BLOB or TREE.
+         * @param id the hashId. */
+        Entry(byte type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        /** BLOB or TREE. */
+        private final byte type;
+
+        /** The hashId of the blob or subtree. */
+        private final String id;
+    }
+
+    /** Type of an entry that is a file. */
+    private static final byte BLOB = 'b';
+
+    /** Type of an entry that is a directory. */
+    private static final byte TREE = 't';
+
+    /** Magic number at the start of a tree: "GTRE". */
+    private static final int MAGIC = 0x47545245;
+
+    /** Version of the tree format. */
+    private static final int VERSION = 1;
+
+}
@@ -0,0 +1,253 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/** WorkTree class for Gitlet, a class that scans the working directory
+ *  once per command and hashes its files on a ForkJoin pool, so that
+ *  status, add and the merge and checkout checks share one snapshot.
+ *  The whole tree below the working directory is walked, except for
+ *  .gitlet and what .gitletignore leaves out, and files are named by
+ *  their path relative to it with "/" between directories.  A symbolic
+ *  link to a file is taken for the file it points to; a symbolic link
+ *  to a directory is not followed, so nothing outside the working
+ *  directory is scanned.  Ignored files are never read; tracked files
+ *  are still scanned even where they are ignored.
+ *  @author Minh Nguyen
+ */
+public class WorkTree {
+
+    /** Create the scanner of a working directory.
+     * @param cwd the working directory.
+     * @param cache the stat cache of the working directory.
+     * @param config the settings of the repository.
+     * @param trackedFiles gives the paths of the tracked files. */
+    public WorkTree(String cwd, StatCache cache, Config config,
+                    Supplier<Collection<String>> trackedFiles) {
+        root = cwd;
+        statCache = cache;
+        tracked = trackedFiles;
+        parallelism = Math.max(1, config.getInt(Config.PARALLELISM,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Get the paths of the plain files in the working directory and its
+     * subdirectories, walking it on first use.
+     * @return the paths, in lexicographic order. */
+    public List<String> files() {
+        if (files == null) {
+            List<String> found = new ArrayList<>();
+            Path top = new File(root).toPath();
+            IgnoreRules ignore = new IgnoreRules(root);
+            Trace.Phase phase = Trace.phase("scan");
+            try (phase) {
+                Files.walkFileTree(top, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory
+                        (Path dir, BasicFileAttributes attrs) {
+                        if (dir.equals(top)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        return dir.getFileName().toString().equals(".gitlet")
+                                || ignore.ignored(name(top.relativize(dir)),
+                                true)
+                                ? FileVisitResult.SKIP_SUBTREE
+                                : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile
+                        (Path file, BasicFileAttributes attrs) {
+                        String name = name(top.relativize(file));
+                        boolean plain = attrs.isRegularFile()
+                                || attrs.isSymbolicLink()
+                                && Files.isRegularFile(file);
+                        if (plain && !ignore.ignored(name, false)) {
+                            found.add(name);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed
+                        (Path file, IOException excp) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException excp) {
+                throw Utils.error("Cannot scan working directory.");
+            }
+            if (!ignore.isEmpty()) {
+                HashSet<String> seen = new HashSet<>(found);
+                for (String name : tracked.get()) {
+                    if (!seen.contains(name)
+                            && new File(root, name).isFile()) {
+                        found.add(name);
+                    }
+                }
+            }
+            Collections.sort(found);
+            files = found;
+        }
+        return files;
+    }
+
+    /** Delete a working file, then every directory above it that is left
+     * empty, up to the working directory.
+     * @param name the path of the file. */
+    public void delete(String name) {
+        File file = new File(root, name);
+        if (!file.isFile()) {
+            return;
+        }
+        file.delete();
+        File top = new File(root);
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(top) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        invalidate();
+    }
+
+    /** Get the path of a working file in the form files are named by,
+     * with "/" between directories and no "." or ".." parts.  An absolute
+     * path is taken relative to the working directory.  A path outside
+     * the working directory, including one through a symbolic link to a
+     * directory outside it, is an error.
+     * @param name the path as given.
+     * @return the path, "." for the working directory itself. */
+    public static String path(String name) {
+        Path top = Path.of(System.getProperty("user.dir")).toAbsolutePath()
+                .normalize();
+        Path given;
+        try {
+            given = top.resolve(name).normalize();
+            Path parent = given.getParent();
+            if (!given.startsWith(top) || parent != null
+                    && Files.isDirectory(parent)
+                    && !parent.toRealPath().startsWith(top.toRealPath())) {
+                throw Utils.error("%s is outside the working directory.",
+                        name);
+            }
+        } catch (InvalidPathException | IOException excp) {
+            throw Utils.error("Bad path %s.", name);
+        }
+        String result = name(top.relativize(given));
+        return result.isEmpty() ? "." : result;
+    }
+
+    /** Get the name of a working file from its path relative to the
+     * working directory.
+     * @param relative the path.
+     * @return the name, with "/" between directories. */
+    private static String name(Path relative) {
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Get the hashId of every file in the working directory, hashing the
+     * files on first use with up to core.parallelism threads.  Files the
+     * stat cache knows to be unchanged are not read.
+     * @return a map from file name to hashId. */
+    public TreeMap<String, String> snapshot() {
+        if (snapshot == null) {
+            Map<String, String> hashes = new ConcurrentHashMap<>();
+            forEach(files(), name -> hashes.put(name, hash(name)));
+            snapshot = new TreeMap<>(hashes);
+        }
+        return snapshot;
+    }
+
+    /** Run an action on every name, on up to core.parallelism threads.
+     * The first exception thrown by an action is thrown again here.
+     * @param names the names.
+     * @param action the action. */
+    public void forEach(List<String> names, Consumer<String> action) {
+        forEach(names, action, parallelism);
+    }
+
+    /** Run an action on every name, on up to a number of threads.
+     * The first exception or error thrown by an action is thrown again
+     * here, not the copies the pool makes of it on the way; only an
+     * interrupt of this thread is reported as such.
+     * @param names the names.
+     * @param action the action.
+     * @param threads the most threads to use. */
+    public static void forEach(List<String> names, Consumer<String> action,
+                               int threads) {
+        if (threads <= 1 || names.size() < 2) {
+            names.forEach(action);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> names.parallelStream().forEach(action)).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted.");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            while (cause.getCause() != null
+                    && cause.getCause().getClass() == cause.getClass()) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Forget the listing and hashes, after the command changed the
+     * working directory. */
+    public void invalidate() {
+        files = null;
+        snapshot = null;
+    }
+
+    /** Get the hashId of one working file.
+     * @param name the name of the file.
+     * @return the hashId. */
+    private String hash(String name) {
+        return statCache.hash(name, new File(root, name));
+    }
+
+    /** The working directory. */
+    private String root;
+
+    /** The stat cache of the working directory. */
+    private StatCache statCache;
+
+    /** Gives the paths of the tracked files. */
+    private Supplier<Collection<String>> tracked;
+
+    /** The number of threads files are hashed on. */
+    private int parallelism;
+
+    /** The names of the working files, or null before first use. */
+    private List<String> files;
+
+    /** The hashId of each working file, or null before first use. */
+    private TreeMap<String, String> snapshot;
+
+}
@@ -0,0 +1,173 @@
+package gitlet;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** CommandsBenchmark class for the Gitlet benchmarks, a class that times
+ *  each command against generated repositories.
+ *  Every benchmark gets its own repository, built by RepoFixture from the
+ *  files, depth and branches parameters, and each call makes a new
+ *  Commands so the repository state is read from disk as it is for a
+ *  command line run.  What the commands print is thrown away.
+ *  @author Minh Nguyen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandsBenchmark {
+
+    /** Generate the repository and silence the output. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new RepoFixture(files, depth, branches, FILE_SIZE);
+        version = depth + 1;
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /** Restore the output and delete the repository. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+        fixture.delete();
+    }
+
+    /** Time status on a clean working directory. */
+    @Benchmark
+    public void status() {
+        fixture.commands().status();
+    }
+
+    /** Time log of the whole history of master. */
+    @Benchmark
+    public void log() {
+        fixture.commands().log(new String[] {"log"});
+    }
+
+    /** Time add of every file when none has changed. */
+    @Benchmark
+    public void addUnchanged() {
+        fixture.add(".");
+    }
+
+    /** Time add of one changed file. */
+    @Benchmark
+    public void addChanged() {
+        String name = nextFile();
+        fixture.write(name, version);
+        fixture.add(name);
+    }
+
+    /** Time commit of one changed file, with its add. */
+    @Benchmark
+    public void commit() {
+        commitChange(0);
+    }
+
+    /** Time a checkout of another branch, going back and forth between
+     * master and branch-1. */
+    @Benchmark
+    public void checkout() {
+        onBranch = !onBranch;
+        fixture.checkout(onBranch ? "branch-1" : "master");
+    }
+
+    /** Time merge of a branch that has diverged from master.
+     * @param diverged the branch. */
+    @Benchmark
+    public void merge(Diverged diverged) {
+        fixture.commands().merge(diverged.branch);
+    }
+
+    /** Give master and a new branch one commit each on different files,
+     * so that merging the branch is a true merge.
+     * @return the branch. */
+    private String diverge() {
+        String branch = "merge-" + version;
+        fixture.commands().branch(branch);
+        fixture.checkout(branch);
+        commitChange(0);
+        fixture.checkout("master");
+        commitChange(1);
+        return branch;
+    }
+
+    /** Change one file among the first or second half, add and commit it.
+     * @param half which half of the files to change. */
+    private void commitChange(int half) {
+        String name = fixture.name(half * (fixture.files() / 2)
+                + version % Math.max(1, fixture.files() / 2));
+        fixture.write(name, version);
+        fixture.add(name);
+        fixture.commit("change " + version);
+        version += 1;
+    }
+
+    /** Get the next file to change.
+     * @return its name. */
+    private String nextFile() {
+        version += 1;
+        return fixture.name(version % fixture.files());
+    }
+
+    /** A branch that has diverged from master, made again before each
+     * merge. */
+    @State(Scope.Benchmark)
+    public static class Diverged {
+
+        /** Make the branch.
+         * @param bench the benchmark holding the repository. */
+        @Setup(Level.Invocation)
+        public void setUp(CommandsBenchmark bench) {
+            branch = bench.diverge();
+        }
+
+        /** The branch. */
+        private String branch;
+    }
+
+    /** Size of each generated file. */
+    private static final int FILE_SIZE = 1024;
+
+    /** Number of files in the repository. */
+    @Param({"100", "1000", "10000"})
+    private int files;
+
+    /** Number of commits after the first. */
+    @Param({"10", "1000"})
+    private int depth;
+
+    /** Number of branches, counting master. */
+    @Param({"2", "16"})
+    private int branches;
+
+    /** The repository. */
+    private RepoFixture fixture;
+
+    /** The output the commands would have printed to. */
+    private PrintStream stdout;
+
+    /** Counter making each change differ from every earlier version,
+     * including those of the generated history. */
+    private int version;
+
+    /** Whether the working directory is at branch-1. */
+    private boolean onBranch;
+
+}
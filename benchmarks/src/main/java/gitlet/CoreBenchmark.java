@@ -0,0 +1,118 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** CoreBenchmark class for the Gitlet benchmarks, a class that times the
+ *  building blocks every command uses: hashing with Utils.sha1, writing
+ *  and reading a commit with Utils.serialize, Utils.deserialize and
+ *  Utils.readObject, and hashing a working file by making a Blobs.
+ *  The size parameter is the size of the data hashed and of the file.
+ *  @author Minh Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoreBenchmark {
+
+    /** Make the data, the commit and the files. */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = new byte[size];
+        new Random(SEED).nextBytes(data);
+        dir = Files.createTempDirectory("gitlet-core").toFile();
+        Utils.writeContents(Utils.join(dir, FILE), (Object) data);
+        commit = new Commits("benchmark commit", Utils.sha1("parent"),
+                Utils.sha1("tree"));
+        serialized = Utils.serialize(commit);
+        commitFile = Utils.join(dir, "commit");
+        Utils.writeContents(commitFile, (Object) serialized);
+    }
+
+    /** Delete the files. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Utils.join(dir, FILE).delete();
+        commitFile.delete();
+        dir.delete();
+    }
+
+    /** Time Utils.sha1 of the data.
+     * @return the hash. */
+    @Benchmark
+    public String sha1() {
+        return Utils.sha1((Object) data);
+    }
+
+    /** Time Utils.serialize of a commit.
+     * @return its bytes. */
+    @Benchmark
+    public byte[] serialize() {
+        return Utils.serialize(commit);
+    }
+
+    /** Time Utils.deserialize of a commit.
+     * @return the commit. */
+    @Benchmark
+    public Commits deserialize() {
+        return Utils.deserialize(serialized, Commits.class);
+    }
+
+    /** Time Utils.readObject of a commit from its file.
+     * @return the commit. */
+    @Benchmark
+    public Commits readObject() {
+        return Utils.readObject(commitFile, Commits.class);
+    }
+
+    /** Time making a Blobs, which hashes the file.
+     * @return the hash. */
+    @Benchmark
+    public String blobs() {
+        return new Blobs(FILE, dir.getPath()).getHash();
+    }
+
+    /** Seed of the random data. */
+    private static final long SEED = 61;
+
+    /** Name of the file hashed by blobs. */
+    private static final String FILE = "data.bin";
+
+    /** Size of the data and of the file, in bytes. */
+    @Param({"1024", "65536", "1048576"})
+    private int size;
+
+    /** The data. */
+    private byte[] data;
+
+    /** Directory holding the files. */
+    private File dir;
+
+    /** A commit. */
+    private Commits commit;
+
+    /** The serialized commit. */
+    private byte[] serialized;
+
+    /** The file holding the serialized commit. */
+    private File commitFile;
+
+}
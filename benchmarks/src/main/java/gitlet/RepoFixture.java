@@ -0,0 +1,141 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** RepoFixture class for the Gitlet benchmarks, a class that generates a
+ *  repository of a given size in a temporary directory and runs commands
+ *  in it through Commands, as Main would.
+ *  The repository has FILES files of about FILESIZE bytes, a hundred to a
+ *  directory, committed at once; DEPTH more commits on master that each
+ *  change a few of them; and BRANCHES - 1 other branches, branch-1 and
+ *  so on, each one commit ahead of master.  It is left on master with
+ *  nothing staged.
+ *  @author Minh Nguyen
+ */
+public class RepoFixture {
+
+    /** Generate a repository.
+     * @param files the number of files.
+     * @param depth the number of commits after the first.
+     * @param branches the number of branches, counting master.
+     * @param fileSize the size of each file in bytes. */
+    public RepoFixture(int files, int depth, int branches, int fileSize) {
+        try {
+            dir = Files.createTempDirectory("gitlet-bench").toFile();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot create %s.", "gitlet-bench");
+        }
+        size = fileSize;
+        count = files;
+        commands().init();
+        for (int i = 0; i < files; i += 1) {
+            write(name(i), 0);
+        }
+        add(".");
+        commit("initial files");
+        int changed = Math.max(1, files / 100);
+        for (int c = 1; c <= depth; c += 1) {
+            String[] names = new String[changed];
+            for (int i = 0; i < changed; i += 1) {
+                names[i] = name((c * changed + i) % files);
+                write(names[i], c);
+            }
+            add(names);
+            commit("commit " + c);
+        }
+        for (int b = 1; b < branches; b += 1) {
+            commands().branch("branch-" + b);
+            checkout("branch-" + b);
+            write("branch-" + b + ".txt", b);
+            add("branch-" + b + ".txt");
+            commit("work on branch-" + b);
+            checkout("master");
+        }
+    }
+
+    /** Get a Commands for the repository, with fresh state read from
+     * .gitlet as a new process would.
+     * @return the commands. */
+    public Commands commands() {
+        System.setProperty("user.dir", dir.getPath());
+        return new Commands();
+    }
+
+    /** Get the name of a generated file.
+     * @param i the number of the file.
+     * @return its path, relative to the working directory. */
+    public String name(int i) {
+        return "dir" + (i / FILES_PER_DIR) + "/file" + i + ".txt";
+    }
+
+    /** Get the number of generated files.
+     * @return the number of files. */
+    public int files() {
+        return count;
+    }
+
+    /** Write a version of a file in the working directory.
+     * @param name its path, relative to the working directory.
+     * @param version a number that makes the contents differ. */
+    public void write(String name, int version) {
+        File file = Utils.join(dir, name);
+        file.getParentFile().mkdirs();
+        StringBuilder text = new StringBuilder(size + LINE);
+        for (int line = 0; text.length() < size; line += 1) {
+            text.append(name).append(" version ").append(version)
+                    .append(" line ").append(line).append('\n');
+        }
+        Utils.writeContents(file, text.toString());
+    }
+
+    /** Run add.
+     * @param names the operands. */
+    public void add(String... names) {
+        String[] args = new String[names.length + 1];
+        args[0] = "add";
+        System.arraycopy(names, 0, args, 1, names.length);
+        commands().add(args);
+    }
+
+    /** Run commit.
+     * @param message the message. */
+    public void commit(String message) {
+        commands().commit(message);
+    }
+
+    /** Run checkout of a branch.
+     * @param branch the branch. */
+    public void checkout(String branch) {
+        commands().checkout(new String[] {"checkout", branch});
+    }
+
+    /** Delete the repository and its working directory. */
+    public void delete() {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile).forEach(File::delete);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot delete %s.", dir.getPath());
+        }
+    }
+
+    /** Files in each generated directory. */
+    private static final int FILES_PER_DIR = 100;
+
+    /** Longest line of a generated file. */
+    private static final int LINE = 80;
+
+    /** The working directory of the repository. */
+    private File dir;
+
+    /** Size of each generated file. */
+    private int size;
+
+    /** Number of generated files. */
+    private int count;
+
+}
@@ -0,0 +1,266 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** RepoGenerator class for the Gitlet benchmarks, a class that generates
+ *  a large repository with a given shape, for ScaleHarness to run
+ *  commands against.
+ *  The first commit holds every file, spread over two levels of
+ *  directories a hundred files to a directory.  File sizes follow a
+ *  log-normal distribution around a median, between MIN_SIZE and a
+ *  maximum.  The remaining commits are made in runs on master and the
+ *  other branches in turn; a commit changes a few files of its own
+ *  branch's share, so that merging a branch into master, after every
+ *  few of its runs, never conflicts.  Everything is done through
+ *  Commands, as Main would, and the same seed gives the same
+ *  repository.
+ *  Usage: java gitlet.RepoGenerator DIR [--files N] [--commits N]
+ *  [--branches N] [--run N] [--merge-every N] [--changes N]
+ *  [--size-median BYTES] [--size-spread SIGMA] [--size-max BYTES]
+ *  [--seed N].
+ *  @author Minh Nguyen
+ */
+public class RepoGenerator {
+
+    /** Generate a repository from the command line.
+     * @param args the directory, then the options. */
+    public static void main(String... args) {
+        if (args.length == 0 || args.length % 2 == 0) {
+            usage();
+        }
+        RepoGenerator generator = new RepoGenerator(new File(args[0]));
+        for (int i = 1; i < args.length; i += 2) {
+            String option = args[i];
+            if (option.equals("--size-spread")) {
+                generator.sizeSpread = number(args[i + 1]);
+                continue;
+            }
+            long value = (long) number(args[i + 1]);
+            switch (option) {
+            case "--files" -> generator.files = (int) value;
+            case "--commits" -> generator.commits = (int) value;
+            case "--branches" -> generator.branches = (int) value;
+            case "--run" -> generator.run = (int) value;
+            case "--merge-every" -> generator.mergeEvery = (int) value;
+            case "--changes" -> generator.changes = (int) value;
+            case "--size-median" -> generator.sizeMedian = (int) value;
+            case "--size-max" -> generator.sizeMax = (int) value;
+            case "--seed" -> generator.seed = value;
+            default -> usage();
+            }
+        }
+        long start = System.nanoTime();
+        generator.generate();
+        System.out.printf("Generated %d files, %d commits, %d branches and "
+                        + "%d merges in %d ms.%n", generator.files,
+                generator.made, generator.branches, generator.merges,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** A generator of a repository in the given directory, with the
+     * default shape.
+     * @param directory the working directory, created if missing. */
+    public RepoGenerator(File directory) {
+        dir = directory;
+    }
+
+    /** Generate the repository.  The directory must not already hold
+     * one. */
+    public void generate() {
+        if (Utils.join(dir, ".gitlet").exists()) {
+            throw Utils.error("%s already holds a repository.", dir);
+        }
+        dir.mkdirs();
+        files = Math.max(1, files);
+        branches = Math.max(1, Math.min(branches, files));
+        Random random = new Random(seed);
+        sizes = new int[files];
+        for (int i = 0; i < files; i += 1) {
+            double size = sizeMedian
+                    * Math.exp(sizeSpread * random.nextGaussian());
+            sizes[i] = (int) Math.max(MIN_SIZE, Math.min(sizeMax, size));
+        }
+        commands().init();
+        for (int i = 0; i < files; i += 1) {
+            write(i, 0);
+        }
+        run("add", ".");
+        commands().commit("initial files");
+        for (int b = 1; b < branches; b += 1) {
+            commands().branch(branch(b));
+        }
+        int[] runs = new int[branches];
+        String current = branch(0);
+        for (int b = 0; made < commits; b = (b + 1) % branches) {
+            if (!branch(b).equals(current)) {
+                run("checkout", branch(b));
+                current = branch(b);
+            }
+            for (int c = 0; c < run && made < commits; c += 1) {
+                commit(b, random);
+            }
+            runs[b] += 1;
+            if (b > 0 && mergeEvery > 0 && runs[b] % mergeEvery == 0) {
+                run("checkout", branch(0));
+                current = branch(0);
+                commands().merge(branch(b));
+                merges += 1;
+            }
+        }
+        if (!current.equals(branch(0))) {
+            run("checkout", branch(0));
+        }
+    }
+
+    /** Get the name of a file.
+     * @param i the number of the file.
+     * @return its path, relative to the working directory. */
+    public static String name(int i) {
+        return "d" + (i / (PER_DIR * PER_DIR)) + "/e" + (i / PER_DIR % PER_DIR)
+                + "/f" + i + ".txt";
+    }
+
+    /** Get the name of a branch.
+     * @param b the number of the branch, 0 for master.
+     * @return its name. */
+    public static String branch(int b) {
+        return b == 0 ? "master" : "branch-" + b;
+    }
+
+    /** Change some of a branch's files, add and commit them.
+     * @param b the number of the branch.
+     * @param random the source of the files to change. */
+    private void commit(int b, Random random) {
+        made += 1;
+        int share = (files - b + branches - 1) / branches;
+        int count = Math.max(1, Math.min(share, changes));
+        List<String> args = new ArrayList<>();
+        args.add("add");
+        for (int i = 0; i < count; i += 1) {
+            int file = random.nextInt(share) * branches + b;
+            write(file, made);
+            args.add(name(file));
+        }
+        commands().add(args.toArray(new String[0]));
+        commands().commit("commit " + made + " on " + branch(b));
+    }
+
+    /** Write a version of a file.  Every version is the same text of the
+     * file's size, generated from its number, with one line replaced by
+     * the version number; version 0 has no such line.
+     * @param i the number of the file.
+     * @param version the version. */
+    private void write(int i, int version) {
+        File file = Utils.join(dir, name(i));
+        file.getParentFile().mkdirs();
+        Random text = new Random(seed * 31 + i);
+        byte[] bytes = new byte[sizes[i]];
+        for (int k = 0; k < bytes.length; k += 1) {
+            bytes[k] = k % LINE == LINE - 1 ? (byte) '\n'
+                    : (byte) ('a' + text.nextInt(26));
+        }
+        if (version > 0) {
+            byte[] mark = ("version " + version + "\n").getBytes();
+            int lines = Math.max(1, bytes.length / LINE);
+            int at = (version % lines) * LINE;
+            System.arraycopy(mark, 0, bytes, at,
+                    Math.min(mark.length, bytes.length - at));
+        }
+        Utils.writeContents(file, (Object) bytes);
+    }
+
+    /** Run a command that takes its name as args[0].
+     * @param args the command and its operands. */
+    private void run(String... args) {
+        if (args[0].equals("add")) {
+            commands().add(args);
+        } else {
+            commands().checkout(args);
+        }
+    }
+
+    /** Get a Commands for the repository, with fresh state read from
+     * .gitlet as a new process would.
+     * @return the commands. */
+    private Commands commands() {
+        System.setProperty("user.dir", dir.getAbsolutePath());
+        return new Commands();
+    }
+
+    /** Parse a number of the command line.
+     * @param value the number.
+     * @return the number. */
+    private static double number(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException excp) {
+            usage();
+            return 0;
+        }
+    }
+
+    /** Report badly formed options and exit. */
+    private static void usage() {
+        System.out.println("Usage: java gitlet.RepoGenerator DIR [--files N]"
+                + " [--commits N] [--branches N] [--run N] [--merge-every N]"
+                + " [--changes N] [--size-median BYTES]"
+                + " [--size-spread SIGMA] [--size-max BYTES]"
+                + " [--seed N]");
+        System.exit(0);
+    }
+
+    /** Files in each directory, and directories in each directory. */
+    private static final int PER_DIR = 100;
+
+    /** Smallest size of a file, enough for the line marking a version. */
+    private static final int MIN_SIZE = 32;
+
+    /** Length of the lines of the generated files. */
+    private static final int LINE = 64;
+
+    /** The working directory of the repository. */
+    private File dir;
+
+    /** Number of files. */
+    private int files = 1000;
+
+    /** Number of commits after the first, merges not counted. */
+    private int commits = 100;
+
+    /** Number of branches, counting master. */
+    private int branches = 1;
+
+    /** Commits made on a branch before moving on to the next. */
+    private int run = 10;
+
+    /** Runs of a branch after which it is merged into master, or 0 for
+     * no merges. */
+    private int mergeEvery = 1;
+
+    /** Files changed by each commit. */
+    private int changes = 10;
+
+    /** Median size of a file. */
+    private int sizeMedian = 4096;
+
+    /** Standard deviation of the logarithm of the size of a file. */
+    private double sizeSpread = 1.0;
+
+    /** Largest size of a file. */
+    private int sizeMax = 1 << 20;
+
+    /** Seed of every random choice. */
+    private long seed = 1;
+
+    /** The size of each file. */
+    private int[] sizes;
+
+    /** Number of commits made so far, merges not counted. */
+    private int made;
+
+    /** Number of merges made so far. */
+    private int merges;
+
+}
@@ -0,0 +1,302 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** ScaleHarness class for the Gitlet benchmarks, a class that runs a
+ *  script of commands against a repository, such as one made by
+ *  RepoGenerator, and reports what each one cost.
+ *  Each line of the script is a command line for Main, with double
+ *  quotes around operands that hold spaces; blank lines and lines
+ *  starting with # are skipped.  Two lines are not commands:
+ *  "modify N" rewrites N tracked files picked at random, and "create N"
+ *  writes N new files, so that the following add and commit have work
+ *  to do.
+ *  Commands run in this JVM, one Main.main each, so a command does not
+ *  pay for starting a JVM; later commands run on code the JIT has
+ *  already compiled.  For each one the harness reports the wall time,
+ *  the bytes read and written through system calls and on storage from
+ *  /proc/self/io (-1 where there is no such file), and the peak heap
+ *  use, summed over the heap pools after a collection before the
+ *  command.  The size of .gitlet is reported at the end.  What the
+ *  commands print, errors included, is thrown away.  Commands report
+ *  errors without exiting, except when a daemon serves the repository:
+ *  Main then exits with the status of a command the daemon failed,
+ *  which ends the run.  The rows so far are still reported, that
+ *  command's as "exited".
+ *  Usage: java gitlet.ScaleHarness DIR SCRIPT.
+ *  @author Minh Nguyen
+ */
+public class ScaleHarness {
+
+    /** Run a script from the command line.
+     * @param args the directory of the repository and the script. */
+    public static void main(String... args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java gitlet.ScaleHarness DIR SCRIPT");
+            System.exit(0);
+        }
+        ScaleHarness harness = new ScaleHarness(new File(args[0]));
+        harness.run(Utils.readContentsAsString(new File(args[1])));
+    }
+
+    /** A harness for the repository in a directory.
+     * @param directory the working directory of the repository. */
+    public ScaleHarness(File directory) {
+        dir = directory.getAbsoluteFile();
+    }
+
+    /** Run a script and print the report to standard output.
+     * @param script the script. */
+    public void run(String script) {
+        report = System.out;
+        Thread printer = new Thread(this::printReport);
+        Runtime.getRuntime().addShutdownHook(printer);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (String line : script.split("\n")) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    step(line);
+                }
+            }
+        } finally {
+            System.setOut(report);
+        }
+        Runtime.getRuntime().removeShutdownHook(printer);
+        printReport();
+    }
+
+    /** Run one line of the script and record its cost.
+     * @param line the line. */
+    private void step(String line) {
+        String[] args = split(line);
+        if (args[0].equals("modify") || args[0].equals("create")) {
+            int count = Integer.parseInt(args[1]);
+            if (args[0].equals("modify")) {
+                modify(count);
+            } else {
+                create(count);
+            }
+            return;
+        }
+        System.setProperty("user.dir", dir.getPath());
+        System.gc();
+        List<MemoryPoolMXBean> heap = heapPools();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long[] before = io();
+        Row row = new Row(line);
+        rows.add(row);
+        long start = System.nanoTime();
+        Main.main(args);
+        row.nanos = System.nanoTime() - start;
+        long[] after = io();
+        for (int i = 0; i < IO_FIELDS.length; i += 1) {
+            row.io[i] = before[i] < 0 ? -1 : after[i] - before[i];
+        }
+        for (MemoryPoolMXBean pool : heap) {
+            row.peakHeap += pool.getPeakUsage().getUsed();
+        }
+        row.done = true;
+    }
+
+    /** Rewrite tracked files picked at random with new contents.
+     * @param count the number of files. */
+    private void modify(int count) {
+        List<String> tracked = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.filter(Files::isRegularFile)
+                    .map(path -> dir.toPath().relativize(path).toString())
+                    .filter(path -> !path.startsWith(".gitlet"))
+                    .forEach(tracked::add);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot list %s.", dir.getPath());
+        }
+        if (tracked.isEmpty()) {
+            return;
+        }
+        tracked.sort(null);
+        for (int i = 0; i < count; i += 1) {
+            File file = Utils.join(dir,
+                    tracked.get(random.nextInt(tracked.size())));
+            edits += 1;
+            String contents = Utils.readContentsAsString(file);
+            Utils.writeContents(file, "edit " + edits + "\n" + contents);
+        }
+    }
+
+    /** Write new files under the directory "new".
+     * @param count the number of files. */
+    private void create(int count) {
+        for (int i = 0; i < count; i += 1) {
+            edits += 1;
+            File file = Utils.join(dir, "new", "n" + edits + ".txt");
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, "new file " + edits + "\n");
+        }
+    }
+
+    /** Print the rows recorded so far and the size of .gitlet, once. */
+    private synchronized void printReport() {
+        if (printed) {
+            return;
+        }
+        printed = true;
+        report.printf("%-32s %10s %12s %12s %12s %12s %10s%n", "command",
+                "ms", "read", "written", "disk read", "disk written",
+                "peak heap");
+        for (Row row : rows) {
+            if (!row.done) {
+                report.printf("%-32s exited%n", row.line);
+                continue;
+            }
+            report.printf("%-32s %10.1f %12d %12d %12d %12d %9dM%n",
+                    shorten(row.line), row.nanos / 1e6, row.io[0],
+                    row.io[1], row.io[2], row.io[3],
+                    row.peakHeap >> 20);
+        }
+        long[] size = new long[2];
+        try (Stream<Path> paths = Files.walk(Utils.join(dir, ".gitlet")
+                .toPath())) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                size[0] += 1;
+                size[1] += path.toFile().length();
+            });
+        } catch (IOException excp) {
+            size[0] = -1;
+        }
+        report.printf(".gitlet: %d files, %d bytes%n", size[0], size[1]);
+        report.flush();
+    }
+
+    /** Split a line into arguments at spaces, keeping double-quoted
+     * operands whole.
+     * @param line the line.
+     * @return the arguments. */
+    private static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                any = true;
+            } else if (c == ' ' && !quoted) {
+                if (any) {
+                    args.add(arg.toString());
+                }
+                arg.setLength(0);
+                any = false;
+            } else {
+                arg.append(c);
+                any = true;
+            }
+        }
+        if (any) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Shorten a line to fit its column.
+     * @param line the line.
+     * @return the line, cut to 32 characters. */
+    private static String shorten(String line) {
+        return line.length() <= 32 ? line : line.substring(0, 29) + "...";
+    }
+
+    /** Get the pools of the heap.
+     * @return the pools. */
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool
+                : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    /** Read the I/O counters of this process.
+     * @return the counters named in IO_FIELDS, or -1s if they cannot be
+     * read. */
+    private static long[] io() {
+        long[] counters = {-1, -1, -1, -1};
+        if (!PROC_IO.isFile()) {
+            return counters;
+        }
+        for (String line : Utils.readContentsAsString(PROC_IO).split("\n")) {
+            for (int i = 0; i < IO_FIELDS.length; i += 1) {
+                if (line.startsWith(IO_FIELDS[i] + ":")) {
+                    counters[i] = Long.parseLong(line.substring
+                            (IO_FIELDS[i].length() + 1).strip());
+                }
+            }
+        }
+        return counters;
+    }
+
+    /** The cost of one command. */
+    private static class Row {
+
+        /** The cost of the command on LINE.
+         * @param line the line of the script. */
+        Row(String line) {
+            this.line = line;
+        }
+
+        /** The line of the script. */
+        private final String line;
+
+        /** The wall time in nanoseconds. */
+        private long nanos;
+
+        /** The changes in the counters named in IO_FIELDS. */
+        private final long[] io = new long[IO_FIELDS.length];
+
+        /** The peak heap use in bytes. */
+        private long peakHeap;
+
+        /** Whether the command returned. */
+        private boolean done;
+    }
+
+    /** The I/O counters of this process. */
+    private static final File PROC_IO = new File("/proc/self/io");
+
+    /** The counters reported, in order: bytes read and written through
+     * system calls, then bytes fetched from and sent to storage. */
+    private static final String[] IO_FIELDS =
+        {"rchar", "wchar", "read_bytes", "write_bytes"};
+
+    /** The working directory of the repository. */
+    private File dir;
+
+    /** Where the report is printed. */
+    private PrintStream report;
+
+    /** The commands run so far. */
+    private List<Row> rows = new ArrayList<>();
+
+    /** Whether the report was printed. */
+    private boolean printed;
+
+    /** Source of the files to modify. */
+    private Random random = new Random(1);
+
+    /** Number of files modified or created so far. */
+    private int edits;
+
+}